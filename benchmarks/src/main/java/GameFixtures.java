@@ -0,0 +1,144 @@
+import benchmarks.Fixture;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The fixtures behind the benchmarks in the benchmarks package. Every game runs headless, without
+ * rendering, and is updated directly one fixed step at a time.
+ */
+public class GameFixtures {
+
+  private static final float STEP_S = (float) AbstractGame.UPDATE_DURATION_S;
+
+  // One second of game time per run
+  private static final int UPDATES_PER_RUN = 60;
+
+  private static final long SEED = 4242;
+
+  public static class GalacticConquestUpdate implements Fixture {
+
+    private final GalacticConquest game;
+    private final ByteBuffer snapshot;
+
+    public GalacticConquestUpdate(int fleets) throws Exception {
+      game = new GalacticConquest();
+      game.simulate(0);
+      game.startGame(SEED);
+      // Let the AI spread out first
+      game.simulate(20);
+      int stars = game.starOwner.length;
+      int races = game.starsPerPlayer.length;
+      Random random = new Random(SEED);
+      for (int f = 0; f < fleets; f++) {
+        int origin = random.nextInt(stars);
+        int destination = (origin + 1 + random.nextInt(stars - 1)) % stars;
+        game.launchFleet(f % races, origin, destination, 1 + random.nextInt(5));
+      }
+      snapshot = game.saveSnapshot(null);
+    }
+
+    @Override
+    public void prepare() {
+      game.loadSnapshot(snapshot.rewind());
+      // The autosave timer is not in the snapshot, and a run is shorter than the interval, so no
+      // run includes an autosave
+      game.autosaveInterval = GalacticConquest.AUTOSAVE_INTERVAL_S;
+    }
+
+    @Override
+    public long run() {
+      for (int u = 0; u < UPDATES_PER_RUN; u++) {
+        game.update(STEP_S, STEP_S, 0);
+      }
+      int hash = 31 * Arrays.hashCode(game.starOwner) + Arrays.hashCode(game.starShips);
+      return 31 * hash + Arrays.deepHashCode(game.fleetShips);
+    }
+
+    @Override
+    public void dispose() {
+      game.dispose();
+    }
+  }
+
+  /**
+   * Flies as fast as on the first level with a full flock.
+   */
+  public static class FarmerJohnFlock implements Fixture {
+
+    private final int birds;
+    private final FarmerJohn game;
+
+    public FarmerJohnFlock(int birds) throws Exception {
+      this.birds = birds;
+      game = new FarmerJohn(birds);
+      game.simulate(0);
+    }
+
+    @Override
+    public void prepare() {
+      game.startGame((int) Math.ceil((FarmerJohn.MAX_BIRDS - 1) / 1.5));
+      game.startLevel(birds);
+    }
+
+    @Override
+    public long run() {
+      for (int u = 0; u < UPDATES_PER_RUN; u++) {
+        game.update(STEP_S, STEP_S, 0);
+      }
+      return game.checksum();
+    }
+
+    @Override
+    public void dispose() {
+      game.dispose();
+    }
+  }
+
+  public static class WizzyCollision implements Fixture {
+
+    private final int level;
+    private final Wizzy game;
+
+    public WizzyCollision(int level) throws Exception {
+      this.level = level;
+      game = new Wizzy();
+      game.simulate(0);
+    }
+
+    @Override
+    public void prepare() {
+      game.startLevel(level - 1);
+      // Set up the level
+      game.update(STEP_S, STEP_S, 0);
+    }
+
+    @Override
+    public long run() {
+      for (int u = 0; u < UPDATES_PER_RUN; u++) {
+        game.update(STEP_S, STEP_S, 0);
+      }
+      return game.checksum();
+    }
+
+    @Override
+    public void dispose() {
+      game.dispose();
+    }
+  }
+
+  public static class WizzySpriteSheet implements Fixture {
+
+    private final Wizzy game = new Wizzy();
+
+    @Override
+    public long run() {
+      return game.decodeSpriteSheet().getRGB(8, 8);
+    }
+
+    @Override
+    public void dispose() {
+      game.dispose();
+    }
+  }
+}
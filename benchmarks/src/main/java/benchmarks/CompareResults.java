@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two result files of JMH in CSV format, for instance of a change and of the commit it is
+ * based on, measured on the same machine. Prints how the score of every benchmark changed, and
+ * exits with status 1 if any got slower by more than the tolerance. Benchmarks that are not in
+ * both files are skipped.
+ *
+ * Usage: CompareResults baseline.csv results.csv [tolerance, default 0.25]
+ */
+public class CompareResults {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args[0].isEmpty()) {
+      throw new IllegalArgumentException(
+          "Usage: CompareResults baseline.csv results.csv [tolerance]");
+    }
+    Map<String, Double> baseline = read(Paths.get(args[0]));
+    Map<String, Double> results = read(Paths.get(args[1]));
+    double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.25;
+
+    List<String> slower = new ArrayList<>();
+    System.out.printf("%-50s %14s %14s %8s%n", "Benchmark", "Baseline", "Score", "Change");
+    for (Map.Entry<String, Double> result : results.entrySet()) {
+      Double before = baseline.get(result.getKey());
+      if (before == null) {
+        continue;
+      }
+      double after = result.getValue();
+      double change = after / before - 1;
+      System.out.printf("%-50s %14.1f %14.1f %+7.1f%%%n", result.getKey(), before, after,
+          change * 100);
+      if (change > tolerance) {
+        slower.add(result.getKey());
+      }
+    }
+    if (!slower.isEmpty()) {
+      System.out.println("Slower than the baseline: " + String.join(", ", slower));
+      System.exit(1);
+    }
+  }
+
+  /**
+   * The scores in the file by benchmark, named after the method and the values of its parameters.
+   * Scores are times per run, so higher is slower. The benchmarks stay in the order of the file.
+   */
+  private static Map<String, Double> read(Path file) throws IOException {
+    List<String> lines = Files.readAllLines(file);
+    if (lines.isEmpty()) {
+      throw new IOException("No results in " + file);
+    }
+    List<String> header = split(lines.get(0));
+    int score = header.indexOf("Score");
+    int mode = header.indexOf("Mode");
+    if (score == -1 || mode == -1) {
+      throw new IOException("Not a JMH result file: " + file);
+    }
+    Map<String, Double> scores = new LinkedHashMap<>();
+    for (String line : lines.subList(1, lines.size())) {
+      List<String> fields = split(line);
+      if (!fields.get(mode).equals("avgt")) {
+        throw new IOException("Only average times can be compared: " + line);
+      }
+      StringBuilder name = new StringBuilder(fields.get(0));
+      for (int f = 0; f < header.size(); f++) {
+        if (header.get(f).startsWith("Param: ") && !fields.get(f).isEmpty()) {
+          name.append(' ').append(header.get(f).substring(7)).append('=').append(fields.get(f));
+        }
+      }
+      scores.put(name.toString(), Double.parseDouble(fields.get(score)));
+    }
+    return scores;
+  }
+
+  /**
+   * The fields of a line of CSV, without their quotes. JMH only quotes fields without quotes or
+   * commas in them.
+   */
+  private static List<String> split(String line) {
+    List<String> fields = new ArrayList<>();
+    for (String field : line.split(",", -1)) {
+      fields.add(field.startsWith("\"") ? field.substring(1, field.length() - 1) : field);
+    }
+    return fields;
+  }
+}
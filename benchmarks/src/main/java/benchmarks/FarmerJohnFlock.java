@@ -0,0 +1,18 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * A second of a FarmerJohn level with a flock of the given size. Flocks larger than the game's
+ * own repulse from grid cells instead of from each bird.
+ */
+public class FarmerJohnFlock extends GameBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  public int birds;
+
+  @Override
+  protected Fixture createFixture() throws ReflectiveOperationException {
+    return Fixture.create("GameFixtures$FarmerJohnFlock", birds);
+  }
+}
@@ -0,0 +1,42 @@
+package benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * A piece of game code to benchmark, with a way to bring it back to the same starting point
+ * before every run.
+ *
+ * The games are in the unnamed package, which JMH benchmarks can't be in and other packages can't
+ * import. So the fixtures that call into the games are in the unnamed package too, in
+ * GameFixtures, and the benchmarks create them by name.
+ */
+public interface Fixture {
+
+  /**
+   * Create the fixture of the given class, passing its constructor the given numbers.
+   */
+  static Fixture create(String className, int... args) throws ReflectiveOperationException {
+    Class<?>[] types = new Class<?>[args.length];
+    Arrays.fill(types, int.class);
+    Object[] values = Arrays.stream(args).boxed().toArray();
+    return Class.forName(className).asSubclass(Fixture.class).getConstructor(types)
+        .newInstance(values);
+  }
+
+  /**
+   * Called before every run. Not timed.
+   */
+  default void prepare() {
+  }
+
+  /**
+   * The code to time. Returns something that depends on everything the run did, such as a hash of
+   * the game state, so the JIT can't leave any of it out.
+   */
+  long run();
+
+  /**
+   * Called once, after the last run.
+   */
+  void dispose();
+}
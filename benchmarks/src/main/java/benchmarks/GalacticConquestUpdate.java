@@ -0,0 +1,18 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * A second of a GalacticConquest game in full swing, with a number of extra fleets of a few ships
+ * each moving between random stars on top of those of the AI.
+ */
+public class GalacticConquestUpdate extends GameBenchmark {
+
+  @Param({"0", "500", "2000"})
+  public int fleets;
+
+  @Override
+  protected Fixture createFixture() throws ReflectiveOperationException {
+    return Fixture.create("GameFixtures$GalacticConquestUpdate", fleets);
+  }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Times runs of a fixture, each starting from the same point. The games run headless, in a JVM of
+ * their own for every benchmark, so the JIT only sees the code of the benchmark it is timing.
+ *
+ * Runs are prepared per invocation, which JMH only times well for runs of a millisecond or more.
+ * Most runs are a second of game time, well over that.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public abstract class GameBenchmark {
+
+  private Fixture fixture;
+
+  protected abstract Fixture createFixture() throws ReflectiveOperationException;
+
+  @Setup(Level.Trial)
+  public void setup() throws ReflectiveOperationException {
+    fixture = createFixture();
+  }
+
+  @Setup(Level.Invocation)
+  public void prepare() {
+    fixture.prepare();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    fixture.dispose();
+  }
+
+  @Benchmark
+  public void run(Blackhole blackhole) {
+    blackhole.consume(fixture.run());
+  }
+}
@@ -0,0 +1,18 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * A second of a Wizzy level, most of which is moving the entities and colliding them with the map
+ * and each other.
+ */
+public class WizzyCollision extends GameBenchmark {
+
+  @Param({"1", "7"})
+  public int level;
+
+  @Override
+  protected Fixture createFixture() throws ReflectiveOperationException {
+    return Fixture.create("GameFixtures$WizzyCollision", level);
+  }
+}
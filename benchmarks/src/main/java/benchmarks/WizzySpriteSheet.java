@@ -0,0 +1,12 @@
+package benchmarks;
+
+/**
+ * Decoding the Wizzy sprite sheet from its string, as done in setup.
+ */
+public class WizzySpriteSheet extends GameBenchmark {
+
+  @Override
+  protected Fixture createFixture() throws ReflectiveOperationException {
+    return Fixture.create("GameFixtures$WizzySpriteSheet");
+  }
+}
@@ -1,69 +1,181 @@
 import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Cursor;
 import java.awt.Dimension;
-import java.awt.Graphics;
+import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.GraphicsEnvironment;
 import java.awt.RenderingHints;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineUnavailableException;
 import javax.swing.JFrame;
 
 /**
  * Base class for making simple games using plain Java / Swing. This is a replacement for the
  * Applet originally used for the Java4K games.
  *
- * Call start() to run the game, or nothing will happen.
+ * Call start() to run the game, or nothing will happen. When running headless (for example with
+ * -Djava.awt.headless=true) no window is created, and simulate() can be used to run the game
+ * faster than real time.
+ *
+ * Mouse and key events are queued, and passed to the listener methods on the game thread at the
+ * start of each update step. So games can use them freely together with their update logic.
+ *
+ * Frame timings are registered as a JMX MBean (java4k:type=GameStats) until dispose(), and can be
+ * shown on screen by pressing F3.
  */
-public abstract class AbstractGame extends JFrame implements MouseListener, MouseMotionListener,
-    KeyListener {
+public abstract class AbstractGame implements MouseListener, MouseMotionListener, KeyListener {
 
   public static final double UPDATE_DURATION_S = 1.0 / 60.0;
 
+  // By default catch up on at most a quarter of a second per frame
+  public static final int DEFAULT_MAX_UPDATES_PER_FRAME = 15;
+
+  /**
+   * Source of time for the game loop, in seconds.
+   */
+  public interface Clock {
+
+    double now();
+  }
+
+  /**
+   * Clock based on the system timer, used when the game runs in real time.
+   */
+  public static final Clock SYSTEM_CLOCK = () -> (double) System.nanoTime() / 1_000_000_000;
+
+  /**
+   * Clock that only moves forward when told to, used to run simulations independent of real time.
+   */
+  public static class VirtualClock implements Clock {
+
+    private double time = 0;
+
+    @Override
+    public double now() {
+      return time;
+    }
+
+    public void advance(double seconds) {
+      time += seconds;
+    }
+  }
+
+  /**
+   * How the game loop in start() paces its frames.
+   */
+  public enum FramePacing {
+    /**
+     * Loop as fast as possible, rendering every iteration. Uses a full core.
+     */
+    UNCAPPED,
+    /**
+     * Render at most at the target frame rate, sleeping between frames.
+     */
+    TARGET_FPS,
+    /**
+     * Only render when an update has run since the last render, sleeping until the next update.
+     */
+    WHEN_DIRTY
+  }
+
+  private static final int INPUT_QUEUE_CAPACITY = 1024;
+
+  private static final AtomicInteger gameCounter = new AtomicInteger();
+
+  // Parking is not precise, so the last part of a wait is spent spinning
+  private static final double SPIN_WAIT_S = 0.001;
+
+  private final int width;
+  private final int height;
+  private final JFrame frame;
   private final BufferStrategy bufferStrategy;
+  private final boolean renderSmooth;
   private final BufferedImage screenImage;
   private final Graphics2D screenGraphics;
+  private final InputQueue inputQueue = new InputQueue(INPUT_QUEUE_CAPACITY);
+  private final GameStats stats = new GameStats();
+  private ObjectName statsName;
+  private final Font statsFont = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+  private volatile boolean statsVisible = false;
+  private Clock clock = SYSTEM_CLOCK;
+  private boolean renderEnabled;
+  private boolean setupDone = false;
+  private FramePacing framePacing = FramePacing.UNCAPPED;
+  private double targetFrameDurationS = 1.0 / 60.0;
+  private boolean threadedRendering = false;
+  private volatile boolean dirty = true;
+  private int maxUpdatesPerFrame = DEFAULT_MAX_UPDATES_PER_FRAME;
+  private double accumulator = 0;
+  private double currentTime = 0;
   private double frameTime = 0;
-  private double gameTime = 0;
+  private volatile double gameTime = 0;
+  private volatile double lastUpdateTime = 0;
 
   public AbstractGame(String title, int width, int height, boolean renderSmooth) {
-    // Setup window
-    setTitle(title);
-    setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-    setIgnoreRepaint(true);
-    setResizable(false);
-
-    // Setup our canvas which we will render on
-    Canvas canvas = new Canvas();
-    canvas.setPreferredSize(new Dimension(width, height));
-    canvas.addMouseListener(this);
-    canvas.addMouseMotionListener(this);
-    canvas.addKeyListener(this);
-
-    // Show the window
-    add(canvas);
-    pack();
-    setVisible(true);
-
-    // Optimize rendering
-    canvas.setIgnoreRepaint(true);
-    canvas.createBufferStrategy(2);
-    bufferStrategy = canvas.getBufferStrategy();
-    screenImage = GraphicsEnvironment
-        .getLocalGraphicsEnvironment()
-        .getDefaultScreenDevice()
-        .getDefaultConfiguration()
-        .createCompatibleImage(800, 600);
-    screenGraphics = screenImage.createGraphics();
+    this.width = width;
+    this.height = height;
+    this.renderSmooth = renderSmooth;
+
+    if (GraphicsEnvironment.isHeadless()) {
+      // No window, rendering (if enabled) goes to an offscreen image only
+      frame = null;
+      bufferStrategy = null;
+      renderEnabled = false;
+      screenImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      screenGraphics = screenImage.createGraphics();
+      applyRenderingHints(screenGraphics);
+    } else {
+      // Setup window
+      frame = new JFrame(title);
+      frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+      frame.setIgnoreRepaint(true);
+      frame.setResizable(false);
+
+      // Setup our canvas which we will render on
+      Canvas canvas = new Canvas();
+      canvas.setPreferredSize(new Dimension(width, height));
+      InputCollector inputCollector = new InputCollector();
+      canvas.addMouseListener(inputCollector);
+      canvas.addMouseMotionListener(inputCollector);
+      canvas.addKeyListener(inputCollector);
+
+      // Show the window
+      frame.add(canvas);
+      frame.pack();
+      frame.setVisible(true);
+
+      // Optimize rendering: we render straight into the (accelerated) back buffer of the canvas,
+      // which has exactly the size of the canvas
+      canvas.setIgnoreRepaint(true);
+      canvas.createBufferStrategy(2);
+      bufferStrategy = canvas.getBufferStrategy();
+      renderEnabled = true;
+      screenImage = null;
+      screenGraphics = null;
+    }
+  }
+
+  private void applyRenderingHints(Graphics2D g) {
     if (renderSmooth) {
-      screenGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-          RenderingHints.VALUE_ANTIALIAS_ON);
-      screenGraphics.setRenderingHint(RenderingHints.KEY_RENDERING,
-          RenderingHints.VALUE_RENDER_QUALITY);
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
     }
   }
 
@@ -71,7 +183,30 @@ public abstract class AbstractGame extends JFrame implements MouseListener, Mous
 
   protected abstract void update(float stepS, float frameTimeS, float gameTimeS);
 
-  protected abstract void render(Graphics2D g, float frameTimeS, float gameTimeS);
+  /**
+   * Render the current game state. The interpolation value (0..1) is the fraction of an update
+   * step that has passed since the last update, and can be used to interpolate between the
+   * previous and current state.
+   */
+  protected abstract void render(Graphics2D g, float frameTimeS, float gameTimeS,
+      float interpolation);
+
+  /**
+   * Called after one or more updates, on the thread that runs "update". Games that support
+   * threaded rendering copy the state "render" needs into a StateBuffer here, so that "render"
+   * never reads state that "update" is changing.
+   */
+  protected void publishRenderState() {
+    // Do nothing, can be overridden
+  }
+
+  /**
+   * Whether "render" only reads state published in publishRenderState(), so it can safely run on
+   * its own thread.
+   */
+  protected boolean supportsThreadedRendering() {
+    return false;
+  }
 
   /**
    * Start the game. This will first call "setup" and then repeatedly call
@@ -80,47 +215,437 @@ public abstract class AbstractGame extends JFrame implements MouseListener, Mous
    * @throws Exception
    */
   public final void start() throws Exception {
-    setup();
-
-    new Thread(() -> {
-      // Game loop based on "Fix Your Timestep!" by Gaffer On Games
-      double accumulator = 0;
-      double currentTime = now();
-      while (true) {
-        double newTime = now();
-        frameTime = newTime - currentTime;
-        gameTime += frameTime;
-        currentTime = newTime;
-        accumulator += frameTime;
-
-        // Do updates in fixed time steps
-        while (accumulator >= UPDATE_DURATION_S) {
-          update((float) UPDATE_DURATION_S, (float) frameTime, (float) gameTime);
-          accumulator -= UPDATE_DURATION_S;
+    setupOnce();
+
+    if (threadedRendering) {
+      // Simulation and rendering each get their own thread, only sharing the published state
+      new Thread(() -> {
+        currentTime = clock.now();
+        while (true) {
+          updateFrame();
+          waitUntil(lastUpdateTime + UPDATE_DURATION_S);
+        }
+      }, "Simulation").start();
+
+      new Thread(() -> {
+        double lastRenderTime = clock.now();
+        while (true) {
+          double renderTime = clock.now();
+          renderFrame(renderTime, renderTime - lastRenderTime);
+          lastRenderTime = renderTime;
+          waitForNextFrame(renderTime);
+        }
+      }, "Render").start();
+    } else {
+      new Thread(() -> {
+        // Game loop based on "Fix Your Timestep!" by Gaffer On Games
+        currentTime = clock.now();
+        while (true) {
+          tick();
+          waitForNextFrame(currentTime);
         }
+      }).start();
+    }
+  }
 
-        // An render everything in one go
-        render(screenGraphics, (float) frameTime, (float) gameTime);
+  /**
+   * Run the game on the calling thread for the given amount of game time, as fast as possible.
+   * Time is driven by a virtual clock that advances one update step per frame, so the results do
+   * not depend on how fast the machine is. The duration is rounded to a whole number of update
+   * steps, and every frame runs exactly one, so the same duration always runs the same number of
+   * updates. Rendering only happens when enabled, see setRenderEnabled().
+   *
+   * @throws IllegalArgumentException if the duration is negative or not finite
+   * @throws Exception
+   */
+  public final void simulate(double durationS) throws Exception {
+    if (!(durationS >= 0) || durationS == Double.POSITIVE_INFINITY) {
+      throw new IllegalArgumentException("Can not simulate " + durationS + " s");
+    }
+    setupOnce();
 
-        // Now swap the buffers to the result becomes visible
-        displayRender();
-      }
-    }).start();
+    if (!(clock instanceof VirtualClock)) {
+      clock = new VirtualClock();
+      currentTime = clock.now();
+    }
+    VirtualClock virtualClock = (VirtualClock) clock;
+    long steps = Math.round(durationS / UPDATE_DURATION_S);
+    for (long s = 0; s < steps; s++) {
+      virtualClock.advance(UPDATE_DURATION_S);
+      // Pass the step itself rather than the difference of the clock times, which is rounded
+      updateFrame(virtualClock.now(), UPDATE_DURATION_S);
+      renderFrame(currentTime, frameTime);
+    }
   }
 
-  private double now() {
-    return (double)System.nanoTime() / 1_000_000_000;
+  private void setupOnce() throws Exception {
+    if (!setupDone) {
+      setup();
+      setupDone = true;
+      registerStats();
+    }
   }
 
-  private void displayRender() {
-    Graphics graphics = bufferStrategy.getDrawGraphics();
+  private void registerStats() {
     try {
-      graphics.drawImage(screenImage, 0, 0, null);
-      if (!bufferStrategy.contentsLost()) {
+      statsName = new ObjectName("java4k:type=GameStats,name=" + getClass().getSimpleName()
+          + ",id=" + gameCounter.incrementAndGet());
+      ManagementFactory.getPlatformMBeanServer().registerMBean(stats, statsName);
+    } catch (JMException e) {
+      // Statistics are nice to have, the game runs fine without them
+      statsName = null;
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Release what the game holds outside of itself: its statistics MBean and its window, if any.
+   * Call this when done with a game run with simulate(). A game run with start() lasts until the
+   * window is closed, which ends the program.
+   */
+  public void dispose() {
+    if (statsName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(statsName);
+      } catch (JMException e) {
+        e.printStackTrace();
+      }
+      statsName = null;
+    }
+    if (frame != null) {
+      frame.dispose();
+    }
+  }
+
+  /**
+   * Run one iteration of the game loop: catch up on updates, then render.
+   */
+  private void tick() {
+    updateFrame();
+    renderFrame(currentTime, frameTime);
+  }
+
+  /**
+   * Advance the game by as many fixed time steps as the clock has moved on.
+   */
+  private void updateFrame() {
+    double newTime = clock.now();
+    updateFrame(newTime, newTime - currentTime);
+  }
+
+  private void updateFrame(double newTime, double frameTime) {
+    stats.resetUpdateStatsIfRequested();
+    this.frameTime = frameTime;
+    gameTime += frameTime;
+    currentTime = newTime;
+    accumulator += frameTime;
+
+    // Do updates in fixed time steps
+    long updateStart = System.nanoTime();
+    int updates = 0;
+    while (accumulator >= UPDATE_DURATION_S && updates < maxUpdatesPerFrame) {
+      dispatchInput();
+      update((float) UPDATE_DURATION_S, (float) frameTime, (float) gameTime);
+      accumulator -= UPDATE_DURATION_S;
+      updates++;
+    }
+
+    // Still behind? Then drop the time we could not catch up on, or the next frame will only be
+    // slower (the "spiral of death")
+    if (accumulator >= UPDATE_DURATION_S) {
+      double dropped = Math.floor(accumulator / UPDATE_DURATION_S) * UPDATE_DURATION_S;
+      accumulator -= dropped;
+      gameTime -= dropped;
+      stats.droppedTime += dropped;
+    }
+
+    lastUpdateTime = currentTime - accumulator;
+    if (updates > 0) {
+      publishRenderState();
+      dirty = true;
+      stats.updateTime.record(System.nanoTime() - updateStart);
+    }
+    stats.updatesPerFrame.record(updates);
+  }
+
+  /**
+   * Pass all queued input events to the listener methods.
+   */
+  private void dispatchInput() {
+    InputEvent event;
+    while ((event = inputQueue.poll()) != null) {
+      if (event instanceof KeyEvent e) {
+        if (e.getID() == KeyEvent.KEY_PRESSED && e.getKeyCode() == KeyEvent.VK_F3) {
+          statsVisible = !statsVisible;
+        }
+        switch (e.getID()) {
+          case KeyEvent.KEY_PRESSED -> keyPressed(e);
+          case KeyEvent.KEY_RELEASED -> keyReleased(e);
+          case KeyEvent.KEY_TYPED -> keyTyped(e);
+          default -> {
+            // Not a key event we listen to
+          }
+        }
+      } else if (event instanceof MouseEvent e) {
+        switch (e.getID()) {
+          case MouseEvent.MOUSE_PRESSED -> mousePressed(e);
+          case MouseEvent.MOUSE_RELEASED -> mouseReleased(e);
+          case MouseEvent.MOUSE_CLICKED -> mouseClicked(e);
+          case MouseEvent.MOUSE_ENTERED -> mouseEntered(e);
+          case MouseEvent.MOUSE_EXITED -> mouseExited(e);
+          case MouseEvent.MOUSE_MOVED -> mouseMoved(e);
+          case MouseEvent.MOUSE_DRAGGED -> mouseDragged(e);
+          default -> {
+            // Not a mouse event we listen to
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Render the game and show the result, unless there is nothing new to show.
+   */
+  private void renderFrame(double renderTime, double renderFrameTime) {
+    stats.resetRenderStatsIfRequested();
+    if (renderEnabled && (dirty || framePacing != FramePacing.WHEN_DIRTY)) {
+      dirty = false;
+
+      float interpolation = (float) Math.min(1,
+          (renderTime - lastUpdateTime) / UPDATE_DURATION_S);
+
+      if (bufferStrategy == null) {
+        // Headless, so render to the offscreen image
+        renderTo(screenGraphics, (float) renderFrameTime, interpolation);
+        return;
+      }
+
+      // The back buffer may lose its contents (e.g. when the display mode changes), in which case
+      // the frame is simply rendered again
+      do {
+        do {
+          Graphics2D g = (Graphics2D) bufferStrategy.getDrawGraphics();
+          try {
+            applyRenderingHints(g);
+            renderTo(g, (float) renderFrameTime, interpolation);
+          } finally {
+            g.dispose();
+          }
+        } while (bufferStrategy.contentsRestored());
+
+        // Now swap the buffers to the result becomes visible
+        long displayStart = System.nanoTime();
         bufferStrategy.show();
+        stats.displayTime.record(System.nanoTime() - displayStart);
+      } while (bufferStrategy.contentsLost());
+    }
+  }
+
+  private void renderTo(Graphics2D g, float renderFrameTime, float interpolation) {
+    // An render everything in one go
+    long renderStart = System.nanoTime();
+    render(g, renderFrameTime, (float) gameTime, interpolation);
+    if (statsVisible) {
+      g.setColor(new Color(0, 0, 0, 160));
+      g.fillRect(0, 0, width, 18);
+      g.setColor(Color.white);
+      g.setFont(statsFont);
+      g.drawString(stats.summary(), 4, 13);
+    }
+    stats.renderTime.record(System.nanoTime() - renderStart);
+  }
+
+  /**
+   * Wait until the next frame is due according to the frame pacing policy.
+   */
+  private void waitForNextFrame(double frameStartTime) {
+    switch (framePacing) {
+      case TARGET_FPS -> waitUntil(frameStartTime + targetFrameDurationS);
+      case WHEN_DIRTY -> waitUntil(lastUpdateTime + UPDATE_DURATION_S);
+      default -> {
+        // Uncapped, so no waiting
+      }
+    }
+  }
+
+  private void waitUntil(double time) {
+    double remaining;
+    while ((remaining = time - clock.now()) > 0) {
+      if (remaining > SPIN_WAIT_S) {
+        LockSupport.parkNanos((long) ((remaining - SPIN_WAIT_S) * 1_000_000_000));
+      } else {
+        Thread.onSpinWait();
       }
-    } finally {
-      graphics.dispose();
+    }
+  }
+
+  /**
+   * Replace the clock driving the game loop. Must be called before start().
+   */
+  public void setClock(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Set how the game loop paces its frames. Only applies to start(), simulate() never waits.
+   */
+  public void setFramePacing(FramePacing framePacing) {
+    this.framePacing = framePacing;
+  }
+
+  /**
+   * Set the frame rate used with FramePacing.TARGET_FPS.
+   */
+  public void setTargetFps(double targetFps) {
+    this.targetFrameDurationS = 1.0 / targetFps;
+  }
+
+  /**
+   * Run "update" and "render" on separate threads, so a frame costs the slower of the two instead
+   * of their sum. Only possible for games that support it, and must be called before start().
+   */
+  public void setThreadedRendering(boolean threadedRendering) {
+    if (threadedRendering && !supportsThreadedRendering()) {
+      throw new IllegalStateException(getClass().getSimpleName()
+          + " does not support threaded rendering");
+    }
+    this.threadedRendering = threadedRendering;
+  }
+
+  /**
+   * Set the maximum number of updates done in a single frame to catch up with real time. Any time
+   * beyond that is dropped, see getDroppedTime().
+   */
+  public void setMaxUpdatesPerFrame(int maxUpdatesPerFrame) {
+    this.maxUpdatesPerFrame = maxUpdatesPerFrame;
+  }
+
+  /**
+   * Total time in seconds that was skipped because the game loop could not keep up.
+   */
+  public double getDroppedTime() {
+    return stats.droppedTime;
+  }
+
+  public GameStats getStats() {
+    return stats;
+  }
+
+  public void setStatsVisible(boolean statsVisible) {
+    this.statsVisible = statsVisible;
+  }
+
+  /**
+   * Enable or disable calling "render". When running headless rendering is disabled by default;
+   * enabling it renders into an offscreen image, available through getScreenImage().
+   */
+  public void setRenderEnabled(boolean renderEnabled) {
+    this.renderEnabled = renderEnabled;
+  }
+
+  /**
+   * The offscreen image rendered into when running headless. When running in a window rendering
+   * goes straight to the screen, and this returns null.
+   */
+  public BufferedImage getScreenImage() {
+    return screenImage;
+  }
+
+  public boolean isHeadless() {
+    return frame == null;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  protected void setCursor(Cursor cursor) {
+    if (frame != null) {
+      frame.setCursor(cursor);
+    }
+  }
+
+  /**
+   * Create an audio clip from raw sample data. Returns null if no audio device is available, for
+   * instance when running headless; play() accepts null and then does nothing.
+   */
+  protected Clip openClip(AudioFormat format, byte[] data) {
+    if (isHeadless()) {
+      return null;
+    }
+    try {
+      Clip clip = AudioSystem.getClip();
+      clip.open(format, data, 0, data.length);
+      return clip;
+    } catch (LineUnavailableException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  protected void play(Clip clip) {
+    if (clip != null) {
+      clip.setFramePosition(0); // rewind to the beginning
+      clip.start();
+    }
+  }
+
+  /**
+   * Queues the events of the canvas for the game thread.
+   */
+  private class InputCollector extends MouseAdapter implements KeyListener {
+
+    @Override
+    public void keyTyped(KeyEvent e) {
+      inputQueue.offer(e);
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+      inputQueue.offer(e);
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+      inputQueue.offer(e);
+    }
+
+    @Override
+    public void mouseClicked(MouseEvent e) {
+      inputQueue.offer(e);
+    }
+
+    @Override
+    public void mousePressed(MouseEvent e) {
+      inputQueue.offer(e);
+    }
+
+    @Override
+    public void mouseReleased(MouseEvent e) {
+      inputQueue.offer(e);
+    }
+
+    @Override
+    public void mouseEntered(MouseEvent e) {
+      inputQueue.offer(e);
+    }
+
+    @Override
+    public void mouseExited(MouseEvent e) {
+      inputQueue.offer(e);
+    }
+
+    @Override
+    public void mouseMoved(MouseEvent e) {
+      inputQueue.offer(e);
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+      inputQueue.offer(e);
     }
   }
 
@@ -0,0 +1,55 @@
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * Part of a frame that does not change, such as a background, drawn once into an image compatible
+ * with the display and then copied onto every frame in a single drawImage. The image is drawn again
+ * when the size of the layer changes, or after invalidate().
+ */
+public class CachedLayer {
+
+  public interface Painter {
+
+    void paint(Graphics2D g, int width, int height);
+  }
+
+  private final Painter painter;
+  private final int transparency;
+  private BufferedImage image;
+
+  /**
+   * @param painter draws the layer, using the same calls on every invocation
+   * @param transparency one of the java.awt.Transparency constants, use OPAQUE if the painter
+   *        covers the whole layer
+   */
+  public CachedLayer(Painter painter, int transparency) {
+    this.painter = painter;
+    this.transparency = transparency;
+  }
+
+  public CachedLayer(Painter painter) {
+    this(painter, Transparency.TRANSLUCENT);
+  }
+
+  /**
+   * Draw the layer at the top left of g, painting it first if there is no up to date copy.
+   */
+  public void draw(Graphics2D g, int width, int height) {
+    if (image == null || image.getWidth() != width || image.getHeight() != height) {
+      image = g.getDeviceConfiguration().createCompatibleImage(width, height, transparency);
+      Graphics2D lg = image.createGraphics();
+      lg.setRenderingHints(g.getRenderingHints());
+      painter.paint(lg, width, height);
+      lg.dispose();
+    }
+    g.drawImage(image, 0, 0, null);
+  }
+
+  /**
+   * Throw away the cached copy, so the layer is painted again when it is drawn next.
+   */
+  public void invalidate() {
+    image = null;
+  }
+}
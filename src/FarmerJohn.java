@@ -7,9 +7,12 @@ import java.awt.LinearGradientPaint;
 import java.awt.RadialGradientPaint;
 import java.awt.Stroke;
 import java.awt.event.MouseEvent;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.Clip;
 
 /**
@@ -17,7 +20,8 @@ import javax.sound.sampled.Clip;
  */
 public class FarmerJohn extends AbstractGame {
 
-	private static final int MAX_BIRDS = 100;
+	static final int MAX_BIRDS = 100;
+	private static final int MIN_BIRDS_PER_TASK = 1000;
 
 	private static final int DISPLAY_WIDTH = 800;
 	private static final int DISPLAY_HEIGHT = 600;
@@ -43,6 +47,10 @@ public class FarmerJohn extends AbstractGame {
 	private static final float BIRD_CENTER_ATTRACTION_STRENGTH = 0.025f;
 	private static final float BIRD_FLAP_SPEED = 3f;
 	private static final float BIRD_TARGET_AVOID_RANGE_SQ = 4000f;
+	private static final float BIRD_SCARY_REPULSION_FACTOR = 3f;
+	private static final float BIRD_SCARY_REPULSION_RANGE_SQ = BIRD_REPULSION_RANGE_SQ * 10f;
+	private static final int BIRD_REPULSION_RANGE = (int) Math.ceil(Math.sqrt(BIRD_REPULSION_RANGE_SQ));
+	private static final int BIRD_SCARY_REPULSION_RANGE = (int) Math.ceil(Math.sqrt(BIRD_SCARY_REPULSION_RANGE_SQ));
 
 	private static final byte COUNTDOWN_DURATION = 10;
 
@@ -101,14 +109,66 @@ public class FarmerJohn extends AbstractGame {
 	private Clip hitSound;
 	private Clip bonusSound;
 
-	private final float[] birdX = new float[MAX_BIRDS];
-	private final float[] birdY = new float[MAX_BIRDS];
-	private final float[] birdVX = new float[MAX_BIRDS];
-	private final float[] birdVY = new float[MAX_BIRDS];
-	private final float[] birdFlap = new float[MAX_BIRDS];
-	private final int[] birdType = new int[MAX_BIRDS];
-	private final boolean[] birdExploded = new boolean[MAX_BIRDS];
-	private final float[] birdExplode = new float[MAX_BIRDS];
+	private final int maxBirds;
+	private float[] birdX;
+	private float[] birdY;
+	private float[] birdVX;
+	private float[] birdVY;
+	private final float[] birdFlap;
+	private final int[] birdType;
+	private final boolean[] birdExploded;
+	private final float[] birdExplode;
+
+	// The live birds as a whole, see sumUpFlock()
+	private int flockSize;
+	private float flockCenterX;
+	private float flockCenterY;
+	private float flockVelocityX;
+	private float flockVelocityY;
+
+	// Live birds indexed by position, to find the ones close enough to repulse each other. Scary
+	// birds repulse from further away, so they get a grid of their own.
+	private final PointGrid flockGrid;
+	private final PointGrid scaryGrid;
+	// Whether birds repulse from the cells of the grids as a whole, see addRepulsion()
+	private final boolean repulseFromCells;
+	private final int[] flockList;
+	private final int[] scaryList;
+
+	// Where the birds go in the update, see moveFlock()
+	private float[] nextX;
+	private float[] nextY;
+	private float[] nextVX;
+	private float[] nextVY;
+	private final FlockTask[] flockTasks;
+
+	/**
+	 * Moves a range of the birds.
+	 */
+	private class FlockTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		// Room for looking up neighbors, for this task alone
+		private final int[] neighbors = new int[repulseFromCells ? 0 : maxBirds];
+		private final double[] sum = new double[2];
+		private final float[] repulsion = new float[2];
+		private float stepS;
+
+		FlockTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			for (int b = from; b < to; b++) {
+				moveBird(b, stepS, neighbors, sum, repulsion);
+			}
+		}
+	}
 
 	private final float[] effectX = new float[MAX_BIRDS];
 	private final float[] effectY = new float[MAX_BIRDS];
@@ -149,7 +209,44 @@ public class FarmerJohn extends AbstractGame {
 	private final Random random2 = new Random();
 
 	public FarmerJohn() {
+		this(MAX_BIRDS);
+	}
+
+	/**
+	 * Flocks larger than MAX_BIRDS crowd together, as repulsion is divided by the flock size, so
+	 * each bird would have most of the flock in range. Their birds repulse from small cells of birds
+	 * at a time instead, which costs the same however crowded the flock is.
+	 *
+	 * @param maxBirds the largest flock there can be
+	 */
+	FarmerJohn(int maxBirds) {
 		super("Farmer John & The Birds", 800, 600, true);
+		this.maxBirds = maxBirds;
+		repulseFromCells = maxBirds > MAX_BIRDS;
+		int cellsPerRange = repulseFromCells ? 4 : 1;
+		flockGrid = new PointGrid(BIRD_REPULSION_RANGE / cellsPerRange);
+		scaryGrid = new PointGrid(BIRD_SCARY_REPULSION_RANGE / cellsPerRange);
+		birdX = new float[maxBirds];
+		birdY = new float[maxBirds];
+		birdVX = new float[maxBirds];
+		birdVY = new float[maxBirds];
+		birdFlap = new float[maxBirds];
+		birdType = new int[maxBirds];
+		birdExploded = new boolean[maxBirds];
+		birdExplode = new float[maxBirds];
+		nextX = new float[maxBirds];
+		nextY = new float[maxBirds];
+		nextVX = new float[maxBirds];
+		nextVY = new float[maxBirds];
+		flockList = new int[maxBirds];
+		scaryList = new int[maxBirds];
+
+		// Enough tasks to keep every thread of the pool busy, unless the flock is small
+		int tasks = Math.max(1, Math.min(maxBirds / MIN_BIRDS_PER_TASK, 4 * ForkJoinPool.getCommonPoolParallelism()));
+		flockTasks = new FlockTask[tasks];
+		for (int t = 0; t < tasks; t++) {
+			flockTasks[t] = new FlockTask(maxBirds * t / tasks, maxBirds * (t + 1) / tasks);
+		}
 	}
 
 	@Override
@@ -182,12 +279,9 @@ public class FarmerJohn extends AbstractGame {
 
 		AudioFormat audioFormat8 = new AudioFormat(8000, 8, 1, true, true);
 		AudioFormat audioFormat16 = new AudioFormat(16000, 8, 1, true, true);
-		gunSound = AudioSystem.getClip();
-		gunSound.open(audioFormat8, gunSoundData, 0, gunSoundData.length);
-		hitSound = AudioSystem.getClip();
-		hitSound.open(audioFormat16, hitSoundData, 0, hitSoundData.length);
-		bonusSound = AudioSystem.getClip();
-		bonusSound.open(audioFormat8, hitSoundData, 0, hitSoundData.length);
+		gunSound = openClip(audioFormat8, gunSoundData);
+		hitSound = openClip(audioFormat16, hitSoundData);
+		bonusSound = openClip(audioFormat8, hitSoundData);
 
 
 	}
@@ -197,24 +291,7 @@ public class FarmerJohn extends AbstractGame {
 		if (gameState == STATE_MENU) {
 
 			if (mouseButtonDown) {
-				delayTimer = DELAY_TIME;
-				countDown = 0;
-				level = 0;
-				score = 0;
-				gameState = STATE_GAME;
-				subState = SUBSTATE_LEVELSTART;
-				maxCannonAmmo = CANNON_MAX_AMMO;
-				cannonAmmo = CANNON_MAX_AMMO;
-				cannonReloadTime = CANNON_RELOAD_TIME;
-
-				for (int b = 0; b < MAX_BIRDS; b++) {
-					birdType[b] = BIRDTYPE_NONE;
-					effectProgress[b] = -1;
-					beamTime[b] = 0;
-					bonusType[b] = BONUS_NONE;
-					voiceProgress[b] = 2f;
-				}
-
+				startGame(0);
 				mouseButtonDown = false;
 			}
 
@@ -229,7 +306,6 @@ public class FarmerJohn extends AbstractGame {
 			}
 
 			// ****** Update ******
-			boolean allDead = true;
 
 			if (mouseButtonDown && cannonAmmo >= 1) {
 
@@ -237,7 +313,7 @@ public class FarmerJohn extends AbstractGame {
 				int birdHit = -1;
 				int bonusHit = -1;
 				float dist = CANNON_RANGE_SQ;
-				for (int b = 0; b < MAX_BIRDS; b++) {
+				for (int b = 0; b < maxBirds; b++) {
 					if (birdType[b] != BIRDTYPE_NONE && !birdExploded[b]) {
 						float dx = mouseX - birdX[b];
 						float dy = mouseY - birdY[b];
@@ -247,6 +323,8 @@ public class FarmerJohn extends AbstractGame {
 							dist = distanceSq;
 						}
 					}
+				}
+				for (int b = 0; b < MAX_BIRDS; b++) {
 					if (bonusType[b] != BONUS_NONE) {
 						float dx = mouseX - bonusX[b];
 						float dy = mouseY - bonusY[b];
@@ -285,8 +363,7 @@ public class FarmerJohn extends AbstractGame {
 				}
 
 				// Play the pew
-				gunSound.setFramePosition(0); // rewind to the beginning
-				gunSound.start();
+				play(gunSound);
 
 				// Add a voice
 				if (random.nextFloat() < 0.15f) {
@@ -323,8 +400,7 @@ public class FarmerJohn extends AbstractGame {
 						}
 
 						// Play the boom
-						hitSound.setFramePosition(0); // rewind to the beginning
-						hitSound.start();
+						play(hitSound);
 					}
 				}
 
@@ -340,8 +416,7 @@ public class FarmerJohn extends AbstractGame {
 					bonusType[bonusHit] = BONUS_NONE;
 
 					// Play the boom
-					bonusSound.setFramePosition(0); // rewind to the beginning
-					bonusSound.start();
+					play(bonusSound);
 				}
 
 				// Beam!
@@ -376,143 +451,17 @@ public class FarmerJohn extends AbstractGame {
 					if (bonusY[b] > DISPLAY_HEIGHT)
 						bonusType[b] = BONUS_NONE;
 				}
-
-				if (birdType[b] != BIRDTYPE_NONE && !birdExploded[b]) {
-
-					allDead = false;
-
-					float forceX = 0f, forceY = 0f, bCount = 0f;
-					float velocityX = 0f, velocityY = 0f;
-					for (int ob = 0; ob < MAX_BIRDS; ob++) {
-						if (birdType[ob] != BIRDTYPE_NONE && !birdExploded[ob]) {
-							forceX += (birdX[ob] - birdX[b]) * BIRD_ATTRACTION_STRENGTH;
-							forceY += (birdY[ob] - birdY[b]) * BIRD_ATTRACTION_STRENGTH;
-							velocityX += birdVX[ob];
-							velocityY += birdVY[ob];
-
-							if (birdType[b] != BIRDTYPE_SCARY) {
-								float dx = birdX[ob] - birdX[b];
-								float dy = birdY[ob] - birdY[b];
-								float distanceSq = dx * dx + dy * dy;
-
-								float repulse = BIRD_REPULSION_STRENGTH;
-								float repulseRange = BIRD_REPULSION_RANGE_SQ;
-
-								if (birdType[ob] == BIRDTYPE_SCARY) {
-									repulse *= 3;
-									repulseRange *= 10;
-								}
-
-								if (distanceSq < repulseRange) {
-									forceX += (birdX[b] - birdX[ob]) * repulse;
-									forceY += (birdY[b] - birdY[ob]) * repulse;
-								}
-							}
-
-							bCount++;
-						}
-					}
-
-					int centerY = (int) (100 + 300 * (1f - countDown / countStart));
-
-					birdVX[b] += forceX / bCount + (velocityX / bCount) * BIRD_ALIGNMENT_STRENGTH
-							+ (DISPLAY_CENTER_X - birdX[b]) * BIRD_CENTER_ATTRACTION_STRENGTH;
-
-					birdVY[b] += forceY / bCount + (velocityY / bCount) * BIRD_ALIGNMENT_STRENGTH
-							+ (centerY - birdY[b]) * BIRD_CENTER_ATTRACTION_STRENGTH;
-
-					float dx = mouseX - birdX[b];
-					float dy = mouseY - birdY[b];
-					float distanceSq = dx * dx + dy * dy;
-
-					float useAvoidStrength = avoidStrength;
-					float speedMultiplier = 1f;
-
-					if (birdType[b] == BIRDTYPE_FAST) {
-						useAvoidStrength *= 1.25f;
-						speedMultiplier *= 2f;
-					}
-
-					if (distanceSq < BIRD_TARGET_AVOID_RANGE_SQ) {
-						birdVX[b] += (birdX[b] - mouseX) * useAvoidStrength;
-						birdVY[b] += (birdY[b] - mouseY) * useAvoidStrength;
-					}
-
-					if (birdVX[b] > birdSpeed * speedMultiplier)
-						birdVX[b] = birdSpeed * speedMultiplier;
-					if (birdVY[b] > birdSpeed * speedMultiplier)
-						birdVY[b] = birdSpeed * speedMultiplier;
-
-					if (birdVX[b] < -birdSpeed * speedMultiplier)
-						birdVX[b] = -birdSpeed * speedMultiplier;
-					if (birdVY[b] < -birdSpeed * speedMultiplier)
-						birdVY[b] = -birdSpeed * speedMultiplier;
-
-					birdX[b] += birdVX[b] * stepS;
-					birdY[b] += birdVY[b] * stepS;
-
-					dx = mouseX - birdX[b];
-					dy = mouseY - birdY[b];
-					distanceSq = dx * dx + dy * dy;
-
-					float flapDelta = BIRD_FLAP_SPEED * stepS;
-					if (distanceSq < BIRD_TARGET_AVOID_RANGE_SQ) {
-						flapDelta *= 2;
-					}
-
-					birdFlap[b] = (birdFlap[b] + flapDelta) % 1f;
-
-				}
-				birdExplode[b] += EXPLOSION_SPEED * stepS;
 			}
 
+			sumUpFlock();
+			boolean allDead = flockSize == 0;
+			moveFlock(stepS);
+
 			if (subState == SUBSTATE_LEVELSTART) {
 				delayTimer -= stepS;
 
 				if (delayTimer <= 0) {
-					int nBirds = 1 + (int) ((float) level * 1.5f);
-					int strongBirds = nBirds / 4;
-					int fastBirds = nBirds / 8;
-					int scaryBirds = nBirds / 16;
-					int normalBirds = nBirds - strongBirds - fastBirds - scaryBirds;
-
-					for (int b = 0; b < MAX_BIRDS; b++) {
-
-						birdX[b] = random.nextInt(DISPLAY_WIDTH);
-						birdY[b] = random.nextInt(30) - 50;
-						birdVX[b] = random.nextFloat() * 10f;
-						birdVY[b] = random.nextFloat() * 10f;
-						birdExploded[b] = false;
-						birdFlap[b] = random.nextFloat();
-						if (strongBirds > 0) {
-							strongBirds--;
-							birdType[b] = BIRDTYPE_STRONG;
-						} else if (fastBirds > 0) {
-							fastBirds--;
-							birdType[b] = BIRDTYPE_FAST;
-						} else if (scaryBirds > 0) {
-							scaryBirds--;
-							birdType[b] = BIRDTYPE_SCARY;
-						} else if (normalBirds > 0) {
-							normalBirds--;
-							birdType[b] = BIRDTYPE_NORMAL;
-						} else {
-							birdType[b] = BIRDTYPE_NONE;
-						}
-
-						effectProgress[b] = -1;
-						beamTime[b] = 0;
-						bonusType[b] = BONUS_NONE;
-					}
-
-					countStart = COUNTDOWN_DURATION + level * 1.85f;
-					countDown = countStart;
-
-					avoidStrength = 0.8f + level * 0.06f;
-					birdSpeed = 45f + level * 3f;
-
-					subState = SUBSTATE_GAME;
-					mouseButtonDown = false;
+					startLevel(1 + (int) ((float) level * 1.5f));
 				}
 			} else if (subState == SUBSTATE_GAME) {
 
@@ -552,8 +501,260 @@ public class FarmerJohn extends AbstractGame {
 		}
 	}
 
+	/**
+	 * Sum up the flock before the birds move: count the live birds, find their center and average
+	 * velocity, and index where they are in the grids, the scary birds apart from the others.
+	 */
+	private void sumUpFlock() {
+		int flockCount = 0, scaryCount = 0;
+		double sumX = 0, sumY = 0, sumVX = 0, sumVY = 0;
+		for (int b = 0; b < maxBirds; b++) {
+			if (birdType[b] != BIRDTYPE_NONE && !birdExploded[b]) {
+				sumX += birdX[b];
+				sumY += birdY[b];
+				sumVX += birdVX[b];
+				sumVY += birdVY[b];
+				if (birdType[b] == BIRDTYPE_SCARY) {
+					scaryList[scaryCount++] = b;
+				} else {
+					flockList[flockCount++] = b;
+				}
+			}
+		}
+		flockSize = flockCount + scaryCount;
+		if (flockSize > 0) {
+			flockCenterX = (float) (sumX / flockSize);
+			flockCenterY = (float) (sumY / flockSize);
+			flockVelocityX = (float) (sumVX / flockSize);
+			flockVelocityY = (float) (sumVY / flockSize);
+		}
+		flockGrid.build(birdX, birdY, flockList, flockCount);
+		scaryGrid.build(birdX, birdY, scaryList, scaryCount);
+	}
+
+	/**
+	 * Move all birds one step. Birds are read from the current arrays and written to the next ones,
+	 * which then take their place, so every bird moves based on the flock as it was. That way the
+	 * birds can be moved by several tasks in parallel, with the same outcome however they are split.
+	 */
+	private void moveFlock(float stepS) {
+		for (FlockTask task : flockTasks) {
+			task.stepS = stepS;
+			task.reinitialize();
+		}
+		if (flockTasks.length == 1) {
+			flockTasks[0].invoke();
+		} else {
+			ForkJoinTask.invokeAll(flockTasks);
+		}
+
+		float[] swap = birdX;
+		birdX = nextX;
+		nextX = swap;
+		swap = birdY;
+		birdY = nextY;
+		nextY = swap;
+		swap = birdVX;
+		birdVX = nextVX;
+		nextVX = swap;
+		swap = birdVY;
+		birdVY = nextVY;
+		nextVY = swap;
+	}
+
+	/**
+	 * Move bird b one step, into the next arrays.
+	 */
+	private void moveBird(int b, float stepS, int[] neighbors, double[] sum, float[] repulsion) {
+		float x = birdX[b];
+		float y = birdY[b];
+		float vx = birdVX[b];
+		float vy = birdVY[b];
+
+		if (birdType[b] != BIRDTYPE_NONE && !birdExploded[b]) {
+
+			// Only the repulsion depends on the birds close by
+			repulsion[0] = 0f;
+			repulsion[1] = 0f;
+			if (birdType[b] != BIRDTYPE_SCARY) {
+				addRepulsion(b, flockGrid, BIRD_REPULSION_RANGE_SQ, BIRD_REPULSION_STRENGTH, neighbors, sum,
+						repulsion);
+				addRepulsion(b, scaryGrid, BIRD_SCARY_REPULSION_RANGE_SQ,
+						BIRD_REPULSION_STRENGTH * BIRD_SCARY_REPULSION_FACTOR, neighbors, sum, repulsion);
+			}
+
+			int centerY = (int) (100 + 300 * (1f - countDown / countStart));
+
+			vx += (flockCenterX - x) * BIRD_ATTRACTION_STRENGTH + repulsion[0] / flockSize
+					+ flockVelocityX * BIRD_ALIGNMENT_STRENGTH + (DISPLAY_CENTER_X - x) * BIRD_CENTER_ATTRACTION_STRENGTH;
+
+			vy += (flockCenterY - y) * BIRD_ATTRACTION_STRENGTH + repulsion[1] / flockSize
+					+ flockVelocityY * BIRD_ALIGNMENT_STRENGTH + (centerY - y) * BIRD_CENTER_ATTRACTION_STRENGTH;
+
+			float dx = mouseX - x;
+			float dy = mouseY - y;
+			float distanceSq = dx * dx + dy * dy;
+
+			float useAvoidStrength = avoidStrength;
+			float speedMultiplier = 1f;
+
+			if (birdType[b] == BIRDTYPE_FAST) {
+				useAvoidStrength *= 1.25f;
+				speedMultiplier *= 2f;
+			}
+
+			if (distanceSq < BIRD_TARGET_AVOID_RANGE_SQ) {
+				vx += (x - mouseX) * useAvoidStrength;
+				vy += (y - mouseY) * useAvoidStrength;
+			}
+
+			if (vx > birdSpeed * speedMultiplier)
+				vx = birdSpeed * speedMultiplier;
+			if (vy > birdSpeed * speedMultiplier)
+				vy = birdSpeed * speedMultiplier;
+
+			if (vx < -birdSpeed * speedMultiplier)
+				vx = -birdSpeed * speedMultiplier;
+			if (vy < -birdSpeed * speedMultiplier)
+				vy = -birdSpeed * speedMultiplier;
+
+			x += vx * stepS;
+			y += vy * stepS;
+
+			dx = mouseX - x;
+			dy = mouseY - y;
+			distanceSq = dx * dx + dy * dy;
+
+			float flapDelta = BIRD_FLAP_SPEED * stepS;
+			if (distanceSq < BIRD_TARGET_AVOID_RANGE_SQ) {
+				flapDelta *= 2;
+			}
+
+			birdFlap[b] = (birdFlap[b] + flapDelta) % 1f;
+
+		}
+		birdExplode[b] += EXPLOSION_SPEED * stepS;
+
+		nextX[b] = x;
+		nextY[b] = y;
+		nextVX[b] = vx;
+		nextVY[b] = vy;
+	}
+
+	/**
+	 * Add the repulsion of the birds in the grid that are within range of bird b to the repulsion
+	 * force. When repulsing from cells, the birds of a cell count as being at the cell's center, and
+	 * the whole cell is in range or not.
+	 */
+	private void addRepulsion(int b, PointGrid grid, float rangeSq, float strength, int[] neighbors,
+			double[] sum, float[] repulsion) {
+		if (repulseFromCells) {
+			int found = grid.sumNear(birdX[b], birdY[b], (float) Math.sqrt(rangeSq), sum);
+			repulsion[0] += (float) (found * (double) birdX[b] - sum[0]) * strength;
+			repulsion[1] += (float) (found * (double) birdY[b] - sum[1]) * strength;
+			return;
+		}
+
+		// The grid rounds positions down, so look a pixel further
+		float range = (float) Math.sqrt(rangeSq) + 1f;
+		int found = grid.inside((int) Math.floor(birdX[b] - range), (int) Math.floor(birdY[b] - range),
+				(int) Math.floor(birdX[b] + range), (int) Math.floor(birdY[b] + range), neighbors);
+		for (int n = 0; n < found; n++) {
+			int ob = neighbors[n];
+			float dx = birdX[b] - birdX[ob];
+			float dy = birdY[b] - birdY[ob];
+			if (dx * dx + dy * dy < rangeSq) {
+				repulsion[0] += dx * strength;
+				repulsion[1] += dy * strength;
+			}
+		}
+	}
+
+	/**
+	 * Start a new game at the given level. The birds of the level arrive after the usual delay.
+	 */
+	void startGame(int startLevel) {
+		delayTimer = DELAY_TIME;
+		countDown = 0;
+		level = startLevel;
+		score = 0;
+		gameState = STATE_GAME;
+		subState = SUBSTATE_LEVELSTART;
+		maxCannonAmmo = CANNON_MAX_AMMO;
+		cannonAmmo = CANNON_MAX_AMMO;
+		cannonReloadTime = CANNON_RELOAD_TIME;
+
+		for (int b = 0; b < maxBirds; b++) {
+			birdType[b] = BIRDTYPE_NONE;
+		}
+		for (int b = 0; b < MAX_BIRDS; b++) {
+			effectProgress[b] = -1;
+			beamTime[b] = 0;
+			bonusType[b] = BONUS_NONE;
+			voiceProgress[b] = 2f;
+		}
+	}
+
+	/**
+	 * Let the birds of the current level arrive, nBirds of them.
+	 */
+	void startLevel(int nBirds) {
+		int strongBirds = nBirds / 4;
+		int fastBirds = nBirds / 8;
+		int scaryBirds = nBirds / 16;
+		int normalBirds = nBirds - strongBirds - fastBirds - scaryBirds;
+
+		for (int b = 0; b < maxBirds; b++) {
+
+			birdX[b] = random.nextInt(DISPLAY_WIDTH);
+			birdY[b] = random.nextInt(30) - 50;
+			birdVX[b] = random.nextFloat() * 10f;
+			birdVY[b] = random.nextFloat() * 10f;
+			birdExploded[b] = false;
+			birdFlap[b] = random.nextFloat();
+			if (strongBirds > 0) {
+				strongBirds--;
+				birdType[b] = BIRDTYPE_STRONG;
+			} else if (fastBirds > 0) {
+				fastBirds--;
+				birdType[b] = BIRDTYPE_FAST;
+			} else if (scaryBirds > 0) {
+				scaryBirds--;
+				birdType[b] = BIRDTYPE_SCARY;
+			} else if (normalBirds > 0) {
+				normalBirds--;
+				birdType[b] = BIRDTYPE_NORMAL;
+			} else {
+				birdType[b] = BIRDTYPE_NONE;
+			}
+		}
+		for (int i = 0; i < MAX_BIRDS; i++) {
+			effectProgress[i] = -1;
+			beamTime[i] = 0;
+			bonusType[i] = BONUS_NONE;
+		}
+
+		countStart = COUNTDOWN_DURATION + level * 1.85f;
+		countDown = countStart;
+
+		avoidStrength = 0.8f + level * 0.06f;
+		birdSpeed = 45f + level * 3f;
+
+		subState = SUBSTATE_GAME;
+		mouseButtonDown = false;
+	}
+
+	/**
+	 * A hash of where the birds are and which of them are still flying, to tell whether two runs
+	 * played out the same.
+	 */
+	int checksum() {
+		int hash = 31 * Arrays.hashCode(birdX) + Arrays.hashCode(birdY);
+		return 31 * hash + Arrays.hashCode(birdExploded);
+	}
+
 	@Override
-	protected void render(Graphics2D g, float frameTimeS, float gameTimeS) {
+	protected void render(Graphics2D g, float frameTimeS, float gameTimeS, float interpolation) {
 		g.setPaint(blueSky);
 		g.fillRect(0, 0, DISPLAY_WIDTH, DISPLAY_HEIGHT);
 
@@ -624,7 +825,7 @@ public class FarmerJohn extends AbstractGame {
 			}
 
 			// Draw birds
-			for (int b = 0; b < MAX_BIRDS; b++) {
+			for (int b = 0; b < maxBirds; b++) {
 
 				if (birdType[b] != BIRDTYPE_NONE) {
 					int bX = (int) birdX[b], bY = (int) birdY[b];
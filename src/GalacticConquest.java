@@ -5,11 +5,25 @@ import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.LinearGradientPaint;
 import java.awt.RadialGradientPaint;
+import java.awt.Transparency;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Java4K game - Galactic Conquest 4K. Updated for Java4K contest 2013.
@@ -28,6 +42,10 @@ import java.util.Random;
 // C = toggle mouseover star as collection point. New ships move to collection points automagically.
 // S = build star base at mouseover star
 // H = show/hide balance of powers history graph.
+// R = rewind to the last autosave, a few seconds back. Press again to go back further.
+// F5 = save the game to galacticconquest.sav in your home directory, F9 = load it again.
+// F6 = save a replay of the game so far to galacticconquest.replay in your home directory. Play it
+// back with: java GalacticConquest -replay <file>
 //
 // Some tips:
 // - Ships move 50% faster between owned stars (because of fancy warp accelerator technology), use this to your
@@ -51,7 +69,7 @@ public class GalacticConquest extends AbstractGame {
   private static final int DISPLAY_HEIGHT = 600;
 
   private static final int NUMBER_OF_STARS = 35;
-  private static final int MAX_NUMBER_OF_FLEETS_PER_RACE = 140;
+  private static final int INITIAL_FLEETS_PER_RACE = 140;
   private static final int NUMBER_OF_RACES = 4;
   private static final int RACE_NEUTRAL = 4;
   private static final int MINIMUM_DISTANCE_BETWEEN_STARS = 55;
@@ -67,7 +85,8 @@ public class GalacticConquest extends AbstractGame {
   private static final float BASE_PRODUCTION_BONUS = 1.50f;
 
   private static final float HISTORY_INTERVAL = 0.1f;
-  private static final int HISTORY_POINTS = 770;
+  private static final int HISTORY_COLUMNS = 770;
+  private static final int HISTORY_SAMPLES_PER_COLUMN = 4;
 
   private static final String[] moveFactorText = new String[]{"All", "Half", "One"};
 
@@ -76,6 +95,31 @@ public class GalacticConquest extends AbstractGame {
 
   private static final float MIN_DRAG_DISTANCE = 20;
 
+  private static final int SNAPSHOT_MAGIC = 0x47433453;
+  private static final short SNAPSHOT_VERSION = 1;
+  static final float AUTOSAVE_INTERVAL_S = 5;
+  private static final int AUTOSAVES = 12;
+  private static final String SAVE_FILE = "galacticconquest.sav";
+  private static final int MAX_SAVE_BYTES = 1 << 24;
+
+  // Replays only play back correctly on the same game logic, so bump this when it changes
+  private static final int REPLAY_VERSION = 1;
+  private static final String REPLAY_FILE = "galacticconquest.replay";
+
+  // Player commands, as recorded in replays
+  private static final int CMD_CLICK_STAR = 0;
+  private static final int CMD_MOVE_FACTOR = 1;
+  private static final int CMD_SELECT_AREA = 2;
+  private static final int CMD_BUILD_BASE = 3;
+  private static final int CMD_TOGGLE_COLLECTION = 4;
+  private static final int CMD_REWIND = 5;
+  private static final int MAX_COMMAND_ARGS = 4;
+  // Difficulty, speed, player color and number of stars
+  private static final int REPLAY_SETTINGS = 4;
+
+  private static final int MAX_STAR_NEIGHBORS = 64;
+  private static final int STAR_NEIGHBORS = Math.min(NUMBER_OF_STARS - 1, MAX_STAR_NEIGHBORS);
+
   int mouseX = 0;
   int mouseY = 0;
   int mouseOverStar = -1;
@@ -89,7 +133,6 @@ public class GalacticConquest extends AbstractGame {
   int[] starY = new int[NUMBER_OF_STARS];
   int[] starOwner = new int[NUMBER_OF_STARS];
   int[] starShips = new int[NUMBER_OF_STARS];
-  float[] starMovementDelay = new float[NUMBER_OF_STARS];
   int[] starSeed = new int[NUMBER_OF_STARS];
   float[] starOrbit = new float[NUMBER_OF_STARS];
   float[] starProduction = new float[NUMBER_OF_STARS];
@@ -98,17 +141,59 @@ public class GalacticConquest extends AbstractGame {
   boolean[] starSelected = new boolean[NUMBER_OF_STARS];
   int collectionIndex = 0;
 
-  // Ships
-  int[][] fleetOrigin = new int[NUMBER_OF_RACES][MAX_NUMBER_OF_FLEETS_PER_RACE];
-  int[][] fleetDestination = new int[NUMBER_OF_RACES][MAX_NUMBER_OF_FLEETS_PER_RACE];
-  int[][] fleetShips = new int[NUMBER_OF_RACES][MAX_NUMBER_OF_FLEETS_PER_RACE];
-  int[][] fleetSeed = new int[NUMBER_OF_RACES][MAX_NUMBER_OF_FLEETS_PER_RACE];
-  float[][] fleetProgress = new float[NUMBER_OF_RACES][MAX_NUMBER_OF_FLEETS_PER_RACE];
-
-  float[] xploAngle = new float[MAX_EXPLOSIONS];
-  int[] xploX = new int[MAX_EXPLOSIONS];
-  int[] xploY = new int[MAX_EXPLOSIONS];
-  float[] xploTime = new float[MAX_EXPLOSIONS];
+  // Star graph, built once per game as stars never move. Distances between all pairs of stars
+  // (only a < b is stored, see starDistance()) and for each star its nearest other stars, sorted
+  // by distance. The star positions it was built for are kept, so loading a snapshot of the same
+  // galaxy does not build it again.
+  float[] starDistances = new float[NUMBER_OF_STARS * (NUMBER_OF_STARS - 1) / 2];
+  int[][] starNeighbors = new int[NUMBER_OF_STARS][STAR_NEIGHBORS];
+  final int[] starGraphX = new int[NUMBER_OF_STARS];
+  final int[] starGraphY = new int[NUMBER_OF_STARS];
+  final long[] neighborHeap = new long[STAR_NEIGHBORS];
+
+  // Star positions indexed on a grid, for finding stars near the mouse or in the drag area
+  final PointGrid starGrid = new PointGrid(MINIMUM_DISTANCE_BETWEEN_STARS);
+  final int[] starsFound = new int[NUMBER_OF_STARS];
+
+  final GalaxyGenerator galaxyGenerator = new GalaxyGenerator(40, 40, DISPLAY_WIDTH - 80,
+      DISPLAY_HEIGHT - 120, MINIMUM_DISTANCE_BETWEEN_STARS);
+
+  // Every star gets a turn for the AI once per AI_MOVEMENT_DELAY_S, scheduled in game time
+  final TimerQueue aiTimers = new TimerQueue(NUMBER_OF_STARS);
+  double aiTime = 0;
+
+  // AI of each race, deciding in parallel on a copy of the galaxy
+  final Ai[] ai = new Ai[NUMBER_OF_RACES];
+  final int[][] aiTurns = new int[NUMBER_OF_RACES][NUMBER_OF_STARS];
+  final int[] aiTurnCount = new int[NUMBER_OF_RACES];
+  final Orders[] aiOrders = new Orders[NUMBER_OF_RACES];
+  final AiTask[] aiTasks = new AiTask[NUMBER_OF_RACES];
+  final List<AiTask> aiRunning = new ArrayList<>(NUMBER_OF_RACES);
+  final GalaxyView aiView = new GalaxyView(starX, starY, starDistances, starNeighbors);
+
+  // Ships. Each race has a pool of fleet slots that grows when full. Slots that were never used
+  // are handed out in order, released slots are kept on a free stack, and the slots of moving
+  // fleets are kept in a dense list in order of launch, so launching a fleet takes constant time
+  // and moving them takes time in proportion to the number of moving fleets only.
+  int[][] fleetOrigin = new int[NUMBER_OF_RACES][INITIAL_FLEETS_PER_RACE];
+  int[][] fleetDestination = new int[NUMBER_OF_RACES][INITIAL_FLEETS_PER_RACE];
+  int[][] fleetShips = new int[NUMBER_OF_RACES][INITIAL_FLEETS_PER_RACE];
+  int[][] fleetSeed = new int[NUMBER_OF_RACES][INITIAL_FLEETS_PER_RACE];
+  float[][] fleetProgress = new float[NUMBER_OF_RACES][INITIAL_FLEETS_PER_RACE];
+  int[] fleetsUsed = new int[NUMBER_OF_RACES];
+  int[][] fleetFree = new int[NUMBER_OF_RACES][INITIAL_FLEETS_PER_RACE];
+  int[] fleetFreeCount = new int[NUMBER_OF_RACES];
+  int[][] fleetActive = new int[NUMBER_OF_RACES][INITIAL_FLEETS_PER_RACE];
+  int[] fleetActiveCount = new int[NUMBER_OF_RACES];
+
+  // Moving fleets per lane (origin * NUMBER_OF_STARS + destination), as linked lists in a hash
+  // table. Fleets are numbered fleet * NUMBER_OF_RACES + race. Both tables grow with the pools.
+  int laneTableBits = 0;
+  int[] laneKey = new int[0];
+  int[] laneHead = new int[0];
+  int[] laneNext = new int[0];
+
+  Particles explosions = new Particles(MAX_EXPLOSIONS, Color.white, 20);
 
   // Star bases
   int[] starBase = new int[NUMBER_OF_STARS];
@@ -122,11 +207,9 @@ public class GalacticConquest extends AbstractGame {
   RadialGradientPaint[] starPaints = new RadialGradientPaint[5];
 
   // A history of power
-  int[][] powerHistory = new int[NUMBER_OF_RACES][HISTORY_POINTS];
+  HistoryGraph powerHistory;
   int[] starsPerPlayer = new int[NUMBER_OF_RACES];
   float historyInterval = 0f;
-  int historyIndex = 0;
-  boolean historyWrapped = false;
   boolean historyVisible = true;
 
   // Selection
@@ -134,24 +217,43 @@ public class GalacticConquest extends AbstractGame {
   boolean isDragging = false;
   int dragStartX = 0, dragStartY = 0;
 
-  // Helpers
-  final Random random = new Random();
+  // Helpers. The simulation has its own random generator, so a game plays out the same for the
+  // same seed and player input, no matter how often or when it is rendered.
+  final StatefulRandom simRandom = new StatefulRandom();
+  final Random renderRandom = new Random();
+  long seed = 0;
 
   // Game state
   int gameState = 0;
   boolean victory = false;
 
+  // Snapshots of the game taken every few seconds, most recent last, for rewinding
+  final ByteBuffer[] autosaves = new ByteBuffer[AUTOSAVES];
+  int autosaveCount = 0;
+  float autosaveInterval = AUTOSAVE_INTERVAL_S;
+  ByteBuffer saveBuffer;
+
+  // Replay of the current game being recorded, or being played back. Commands are numbered by the
+  // update they were given before.
+  long gameTick = 0;
+  ReplayLog recording;
+  ReplayLog playback;
+  final int[] commandArgs = new int[MAX_COMMAND_ARGS];
+
   // Text
   Font bigFont = new Font("Impact", Font.PLAIN, 75);
   final Font smallFont = new Font("Impact", Font.PLAIN, 18);
 
-  AffineTransform transformBuffer = null, transformBuffer2 = null;
+  AffineTransform transformBuffer = null;
 
   int[] shipShapeX = {0, 2, -2};
   int[] shipShapeY = {0, 6, 6};
   int[] wingShapeX = {0, 4, -4};
   int[] wingShapeY = {0, 5, 5};
 
+  // Ships of each race, pre-drawn at 64 angles
+  final RotatedSprites shipSprites = new RotatedSprites(this::paintShip, NUMBER_OF_RACES, 16, 64);
+
   LinearGradientPaint titlePaint = new LinearGradientPaint(0, 120, 0, 200,
       new float[]{0.05f, 0.5f, 0.95f}, new Color[]{Color.black, Color.white, Color.black});
   LinearGradientPaint titleBarPaint = new LinearGradientPaint(0, 100, 800, 100,
@@ -161,14 +263,164 @@ public class GalacticConquest extends AbstractGame {
 
   Color starColor = new Color(0.2f, 0.2f, 0.2f);
 
+  // Parts of the screen that never change, drawn once
+  final CachedLayer starfieldLayer = new CachedLayer(this::paintStarfield, Transparency.OPAQUE);
+  final CachedLayer titleLayer = new CachedLayer(this::paintTitle);
+
   int speed = 0;
   int difficulty = 0;
   int playerColor = 0;
 
   float speedFactor = 1;
 
+  /**
+   * Decides what the AI of a race does with its stars whose turn it is. The AI of all races run at
+   * the same time, so an AI may only read the view and write its own orders.
+   */
+  interface Ai {
+
+    void decide(GalaxyView view, int race, int[] stars, int starCount, Orders orders);
+  }
+
+  /**
+   * The classic AI: send all ships in orbit to the nearest star owned by someone else.
+   */
+  static class GreedyAi implements Ai {
+
+    @Override
+    public void decide(GalaxyView view, int race, int[] stars, int starCount, Orders orders) {
+      for (int i = 0; i < starCount; i++) {
+        int s = stars[i];
+        // Give AI ships that are in orbit new orders
+        if (view.starShips[s] > 0) {
+          // Great, lets find a nice place to go
+          int closest = view.closestEnemyStar(s);
+          if (closest != -1) {
+            orders.add(s, closest, view.starShips[s]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Fleets that a race wants to send, in the order they were given.
+   */
+  static class Orders {
+
+    int count = 0;
+    int[] origin = new int[NUMBER_OF_STARS];
+    int[] destination = new int[NUMBER_OF_STARS];
+    int[] ships = new int[NUMBER_OF_STARS];
+
+    void add(int from, int to, int shipCount) {
+      if (count == origin.length) {
+        origin = Arrays.copyOf(origin, count * 2);
+        destination = Arrays.copyOf(destination, count * 2);
+        ships = Arrays.copyOf(ships, count * 2);
+      }
+      origin[count] = from;
+      destination[count] = to;
+      ships[count] = shipCount;
+      count++;
+    }
+  }
+
+  /**
+   * Read-only copy of the galaxy for the AI, taken at the moment the AI gets its turn. Star
+   * positions and the star graph are shared with the game, as they only change between games.
+   */
+  static class GalaxyView {
+
+    final int[] starX;
+    final int[] starY;
+    final int[] starOwner = new int[NUMBER_OF_STARS];
+    final int[] starShips = new int[NUMBER_OF_STARS];
+    final int[] starBase = new int[NUMBER_OF_STARS];
+    private final float[] starDistances;
+    private final int[][] starNeighbors;
+
+    // Moving fleets of all races
+    int fleetCount = 0;
+    int[] fleetRace = new int[0];
+    int[] fleetOrigin = new int[0];
+    int[] fleetDestination = new int[0];
+    int[] fleetShips = new int[0];
+    float[] fleetProgress = new float[0];
+
+    GalaxyView(int[] starX, int[] starY, float[] starDistances, int[][] starNeighbors) {
+      this.starX = starX;
+      this.starY = starY;
+      this.starDistances = starDistances;
+      this.starNeighbors = starNeighbors;
+    }
+
+    float starDistance(int a, int b) {
+      if (a == b) {
+        return 0;
+      }
+      return a < b ? starDistances[starPairIndex(a, b)] : starDistances[starPairIndex(b, a)];
+    }
+
+    /**
+     * The nearest star not owned by the owner of this star, or -1 if there is none.
+     */
+    int closestEnemyStar(int s) {
+      for (int n = 0; n < STAR_NEIGHBORS; n++) {
+        if (starOwner[starNeighbors[s][n]] != starOwner[s]) {
+          // Yay, enemy or neutral planet, lets attack this one!
+          return starNeighbors[s][n];
+        }
+      }
+
+      if (STAR_NEIGHBORS == NUMBER_OF_STARS - 1) {
+        // All other stars are neighbors, so there is none
+        return -1;
+      }
+
+      // Not among the nearest neighbors, so look further away
+      int closest = -1;
+      float clDist = Float.MAX_VALUE;
+      for (int s2 = 0; s2 < NUMBER_OF_STARS; s2++) {
+        if (starOwner[s2] != starOwner[s] && starDistance(s, s2) < clDist) {
+          closest = s2;
+          clDist = starDistance(s, s2);
+        }
+      }
+      return closest;
+    }
+  }
+
+  private class AiTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int race;
+
+    AiTask(int race) {
+      this.race = race;
+    }
+
+    @Override
+    protected void compute() {
+      ai[race].decide(aiView, race, aiTurns[race], aiTurnCount[race], aiOrders[race]);
+    }
+  }
+
   public GalacticConquest() {
     super("Galactic Conquest", 800, 600, true);
+    for (int r = 0; r < NUMBER_OF_RACES; r++) {
+      ai[r] = new GreedyAi();
+      aiOrders[r] = new Orders();
+      aiTasks[r] = new AiTask(r);
+    }
+  }
+
+  /**
+   * Use a different AI for a race.
+   */
+  void setAi(int race, Ai raceAi) {
+    ai[race] = raceAi;
   }
 
   @Override
@@ -181,21 +433,19 @@ public class GalacticConquest extends AbstractGame {
       starPaints[r] = new RadialGradientPaint(0, 0, 30, new float[]{0.1f, 0.3f, 0.6f}, new Color[]{
           raceColor[r], raceColorTransparent[r], new Color(1f, 1f, 1f, 0)});
     }
+    powerHistory = new HistoryGraph(Arrays.copyOf(raceColorTransparent, NUMBER_OF_RACES),
+        HISTORY_COLUMNS, HISTORY_SAMPLES_PER_COLUMN, NUMBER_OF_STARS * 8 + 1, 8);
   }
 
   @Override
   protected void update(float stepS, float frameTimeS, float gameTimeS) {
-    random.setSeed((long) gameTimeS);
+    playBackCommands();
+    gameTick++;
 
     // Stuff common to game over and in-game states
 
     // Determine whether the mouse is hovering over a star
-    mouseOverStar = -1;
-    for (int s = 0; s < NUMBER_OF_STARS; s++) {
-      if (Point2D.distance(starX[s], starY[s], mouseX, mouseY) < 20) {
-        mouseOverStar = s;
-      }
-    }
+    mouseOverStar = starGrid.nearest(mouseX, mouseY, 20);
 
     // Count number of player stars and starbases
     for (int r = 0; r < NUMBER_OF_RACES; r++) {
@@ -213,23 +463,26 @@ public class GalacticConquest extends AbstractGame {
       }
     }
 
+    if (gameState == 1) {
+      autosaveInterval -= stepS;
+      if (autosaveInterval <= 0) {
+        autosave();
+        autosaveInterval = AUTOSAVE_INTERVAL_S;
+      }
+    }
+
     // Remember history
     historyInterval -= stepS;
     if (historyInterval <= 0) {
-      for (int r = 0; r < NUMBER_OF_RACES; r++) {
-        powerHistory[r][historyIndex] = starsPerPlayer[r];
-      }
-      historyIndex++;
-      if (historyIndex >= HISTORY_POINTS) {
-        historyWrapped = true;
-        historyIndex = 0;
-      }
+      powerHistory.add(starsPerPlayer);
       historyInterval = HISTORY_INTERVAL;
     }
 
     // Move fleets
+    indexFleetLanes();
     for (int r = 0; r < NUMBER_OF_RACES; r++) {
-      for (int fl = 0; fl < MAX_NUMBER_OF_FLEETS_PER_RACE; fl++) {
+      for (int a = 0; a < fleetActiveCount[r]; a++) {
+        int fl = fleetActive[r][a];
         if (fleetShips[r][fl] > 0) {
 
           float fleetSpeed = FLEET_MOVEMENT_PROGRESS_PER_S;
@@ -239,56 +492,32 @@ public class GalacticConquest extends AbstractGame {
           }
 
           // Fleets move the same speed over any distance
-          fleetProgress[r][fl] += (fleetSpeed / Point2D.distance(starX[fleetOrigin[r][fl]],
-              starY[fleetOrigin[r][fl]], starX[fleetDestination[r][fl]],
-              starY[fleetDestination[r][fl]]))
-              * stepS;
-
-          // Any ships moving in opposite direction that we will intercept?
-          for (int er = 0; er < NUMBER_OF_RACES; er++) {
-            if (er != r) {
-              for (int efl = 0; efl < MAX_NUMBER_OF_FLEETS_PER_RACE; efl++) {
-                if (fleetShips[er][efl] > 0
-                    && fleetOrigin[er][efl] == fleetDestination[r][fl]
-                    && fleetDestination[er][efl] == fleetOrigin[r][fl]) {
-                  int x1 = starX[fleetOrigin[r][fl]]
-                      + (int) ((starX[fleetDestination[r][fl]] - starX[fleetOrigin[r][fl]])
-                      * fleetProgress[r][fl]);
-                  int y1 = starY[fleetOrigin[r][fl]]
-                      + (int) ((starY[fleetDestination[r][fl]] - starY[fleetOrigin[r][fl]])
-                      * fleetProgress[r][fl]);
-                  if (Point2D
-                      .distance(
-                          x1,
-                          y1,
-                          starX[fleetOrigin[er][efl]]
-                              + (int) (
-                              (starX[fleetDestination[er][efl]] - starX[fleetOrigin[er][efl]])
-                                  * fleetProgress[er][efl]),
-                          starY[fleetOrigin[er][efl]]
-                              + (int) (
-                              (starY[fleetDestination[er][efl]] - starY[fleetOrigin[er][efl]])
-                                  * fleetProgress[er][efl])) < 5) {
-
-                    int c = PARTS_PER_EXPLOSION;
-                    for (int e = 0; e < MAX_EXPLOSIONS; e++) {
-                      if (xploTime[e] <= 0f) {
-                        xploX[e] = x1;
-                        xploY[e] = y1;
-                        xploTime[e] = random.nextFloat() * 0.5f + 0.5f;
-                        xploAngle[e] = random.nextFloat() * 6.28f;
-                        if (c-- <= 0) {
-                          break;
-                        }
-                      }
-                    }
-
-                    // Battle!
-                    int esh = fleetShips[er][efl];
-                    fleetShips[er][efl] -= fleetShips[r][fl];
-                    fleetShips[r][fl] -= esh;
-                  }
-                }
+          fleetProgress[r][fl] += (fleetSpeed
+              / starDistance(fleetOrigin[r][fl], fleetDestination[r][fl])) * stepS;
+
+          // Any ships moving in opposite direction that we will intercept? Only fleets on the
+          // opposite lane can be, and they move along the same vector, just reversed
+          int laneDX = starX[fleetDestination[r][fl]] - starX[fleetOrigin[r][fl]];
+          int laneDY = starY[fleetDestination[r][fl]] - starY[fleetOrigin[r][fl]];
+          int x1 = starX[fleetOrigin[r][fl]] + (int) (laneDX * fleetProgress[r][fl]);
+          int y1 = starY[fleetOrigin[r][fl]] + (int) (laneDY * fleetProgress[r][fl]);
+          int lane = findLane(fleetDestination[r][fl] * NUMBER_OF_STARS + fleetOrigin[r][fl]);
+          for (int f = lane == -1 ? -1 : laneHead[lane]; f != -1; f = laneNext[f]) {
+            int er = f % NUMBER_OF_RACES;
+            int efl = f / NUMBER_OF_RACES;
+            if (er != r && fleetShips[er][efl] > 0) {
+              int dx = starX[fleetDestination[r][fl]] + (int) (-laneDX * fleetProgress[er][efl])
+                  - x1;
+              int dy = starY[fleetDestination[r][fl]] + (int) (-laneDY * fleetProgress[er][efl])
+                  - y1;
+              if (dx * dx + dy * dy < 25) {
+
+                explode(x1, y1);
+
+                // Battle!
+                int esh = fleetShips[er][efl];
+                fleetShips[er][efl] -= fleetShips[r][fl];
+                fleetShips[r][fl] -= esh;
               }
             }
           }
@@ -299,19 +528,7 @@ public class GalacticConquest extends AbstractGame {
             if (starOwner[fleetDestination[r][fl]] != r) {
 
               if (starOwner[fleetDestination[r][fl]] != RACE_NEUTRAL) {
-                int c = PARTS_PER_EXPLOSION;
-                for (int e = 0; e < MAX_EXPLOSIONS; e++) {
-                  if (xploTime[e] <= 0f) {
-                    xploX[e] = starX[fleetDestination[r][fl]];
-                    xploY[e] = starY[fleetDestination[r][fl]];
-                    xploAngle[e] = random.nextFloat() * 6.28f;
-                    xploAngle[e] = random.nextFloat() * 6.28f;
-                    xploTime[e] = random.nextFloat() * 0.5f + 0.5f;
-                    if (c-- <= 0) {
-                      break;
-                    }
-                  }
-                }
+                explode(starX[fleetDestination[r][fl]], starY[fleetDestination[r][fl]]);
               }
 
               // Fight enemy ships, if any
@@ -355,6 +572,7 @@ public class GalacticConquest extends AbstractGame {
         }
       }
     }
+    releaseFleets();
 
     // Update production and star orbit rotation
     for (int s = 0; s < NUMBER_OF_STARS; s++) {
@@ -403,18 +621,8 @@ public class GalacticConquest extends AbstractGame {
               if (nextCollection != -1) {
                 collectionIndex = nextCollection;
                 // A collection point is set for the player, so move new production there
-                // Find available fleet
-                for (int fl = 0; fl < MAX_NUMBER_OF_FLEETS_PER_RACE; fl++) {
-                  if (fleetShips[playerColor][fl] <= 0) {
-                    // There is a fleet available, so lets move
-                    fleetOrigin[playerColor][fl] = s;
-                    fleetDestination[playerColor][fl] = collectionIndex;
-                    fleetProgress[playerColor][fl] = 0;
-                    fleetShips[playerColor][fl] = 1;
-                    starShips[s]--;
-                    break;
-                  }
-                }
+                launchFleet(playerColor, s, collectionIndex, 1);
+                starShips[s]--;
               }
             }
           }
@@ -424,56 +632,21 @@ public class GalacticConquest extends AbstractGame {
     }
 
     // Update explosions
-    for (int e = 0; e < MAX_EXPLOSIONS; e++) {
-      xploTime[e] -= (stepS * 0.5f) / speedFactor;
-    }
-
-    // Do AI actions on stars
-    for (int s = 0; s < NUMBER_OF_STARS; s++) {
-      if (starOwner[s] != playerColor && starOwner[s] != RACE_NEUTRAL) {
-
-        starMovementDelay[s] -= stepS;
-        if (starMovementDelay[s] <= 0f) {
-          starMovementDelay[s] = AI_MOVEMENT_DELAY_S;
-
-          // Give AI ships that are in orbit new orders
-          if (starShips[s] > 0) {
-
-            // Great, lets find a nice place to go
-            int closest = -1;
-            float clDist = 99999999;
-            for (int s2 = 0; s2 < NUMBER_OF_STARS; s2++) {
-
-              if (s2 != s) {
-                float dist = (float) Point2D.distance(starX[s], starY[s], starX[s2],
-                    starY[s2]);
-                if (starOwner[s2] != starOwner[s]) {
-                  // Yay, enemy or neutral planet, lets attack this one!
-                  if (dist < clDist) {
-                    closest = s2;
-                    clDist = dist;
-                  }
-                }
-              }
-            }
-
-            if (closest != -1) {
-              // Find available fleet
-              for (int sh = 0; sh < MAX_NUMBER_OF_FLEETS_PER_RACE; sh++) {
-                if (fleetShips[starOwner[s]][sh] <= 0) {
-                  // There is a fleet available, so lets move
-                  fleetOrigin[starOwner[s]][sh] = s;
-                  fleetDestination[starOwner[s]][sh] = closest;
-                  fleetProgress[starOwner[s]][sh] = 0;
-                  fleetShips[starOwner[s]][sh] = starShips[s];
-                  starShips[s] = 0;
-                  break;
-                }
-              }
-            }
-          }
+    explosions.update((stepS * 0.5f) / speedFactor);
+
+    // Do AI actions on the stars whose turn it is
+    aiTime += stepS;
+    if (aiTimers.due(aiTime)) {
+      Arrays.fill(aiTurnCount, 0);
+      while (aiTimers.due(aiTime)) {
+        double time = aiTimers.nextTime();
+        int s = aiTimers.poll();
+        aiTimers.schedule(s, time + AI_MOVEMENT_DELAY_S);
+        if (starOwner[s] != playerColor && starOwner[s] != RACE_NEUTRAL) {
+          aiTurns[starOwner[s]][aiTurnCount[starOwner[s]]++] = s;
         }
       }
+      runAi();
     }
 
     if (gameState == 1) {
@@ -491,9 +664,10 @@ public class GalacticConquest extends AbstractGame {
         victory = false;
         gameState = 2;
         // Disable all fleets
-        for (int sh = 0; sh < MAX_NUMBER_OF_FLEETS_PER_RACE; sh++) {
-          fleetShips[playerColor][sh] = 0;
+        for (int a = 0; a < fleetActiveCount[playerColor]; a++) {
+          fleetShips[playerColor][fleetActive[playerColor][a]] = 0;
         }
+        releaseFleets();
       }
 
     } else {
@@ -503,31 +677,17 @@ public class GalacticConquest extends AbstractGame {
   }
 
   @Override
-  protected void render(Graphics2D g, float frameTimeS, float gameTimeS) {
+  protected void render(Graphics2D g, float frameTimeS, float gameTimeS, float interpolation) {
     g.setStroke(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
 
-    // Clear background (common to all states)
-    g.setColor(Color.black);
-    g.fillRect(0, 0, DISPLAY_WIDTH, DISPLAY_HEIGHT);
-
-    random.setSeed(32);
-    g.setColor(starColor);
-    for (int s = 0; s < 5000; s++) {
-      g.fillRect(random.nextInt(DISPLAY_WIDTH), random.nextInt(DISPLAY_HEIGHT), 1, 1);
-    }
-    random.setSeed((long) gameTimeS);
+    // Background (common to all states)
+    starfieldLayer.draw(g, getWidth(), getHeight());
 
     if (gameState == 0) {
 
       // Title screen
-      g.setFont(bigFont);
-      g.setPaint(titlePaint);
-      g.drawString("Galactic Conquest 4k", 70, 200);
-      g.setPaint(titleBarPaint);
-      g.drawLine(70, 200, 730, 200);
-      g.setColor(Color.orange);
+      titleLayer.draw(g, getWidth(), getHeight());
       g.setFont(smallFont);
-      g.drawString("www.basvs.dev", 20, 575);
       g.setColor(Color.darkGray);
       g.fillRoundRect(130, 303 + 25 * difficulty, 125, 20, 10, 10);
       g.fillRoundRect(330, 303 + 25 * speed, 115, 20, 10, 10);
@@ -552,36 +712,10 @@ public class GalacticConquest extends AbstractGame {
 
       // Render history
       if (historyVisible) {
-        float stepX = 1;
-        for (int r = 0; r < NUMBER_OF_RACES; r++) {
-          g.setColor(raceColorTransparent[r]);
-          int lastX = 12, lastY = powerHistory[r][0] * 8;
-          if (historyWrapped) {
-            lastY = powerHistory[r][(historyIndex + 1) % HISTORY_POINTS] * 8;
-          }
-          for (int h = 0; (historyWrapped && h < HISTORY_POINTS)
-              || (!historyWrapped && h < historyIndex); h++) {
-            int index = h;
-            if (historyWrapped) {
-              index = (index + historyIndex) % HISTORY_POINTS;
-            }
-            int x = (int) (14f + h * stepX);
-            int y = powerHistory[r][index] * 8;
-            g.drawLine(lastX, 560 - lastY, x, 560 - y);
-            lastX = x;
-            lastY = y;
-          }
-        }
+        powerHistory.draw(g, 14, 560 - NUMBER_OF_STARS * 8);
       }
 
-      for (int e = 0; e < MAX_EXPLOSIONS; e++) {
-        if (xploTime[e] > 0f) {
-          g.setColor(new Color(1f, 1f, 1f, xploTime[e]));
-          float dist = (1f - xploTime[e]) * 20;
-          g.fillOval((int) (Math.sin(xploAngle[e]) * dist) + xploX[e],
-              (int) (Math.cos(xploAngle[e]) * dist) + xploY[e], 4, 4);
-        }
-      }
+      explosions.render(g, 4);
 
       // Render stars, starbases and ships in orbit
       g.setFont(smallFont);
@@ -598,19 +732,13 @@ public class GalacticConquest extends AbstractGame {
 
         if (starOwner[s] != RACE_NEUTRAL) {
           // Render ships in orbit
-          random.setSeed(starSeed[s]);
+          renderRandom.setSeed(starSeed[s]);
           for (int sh = 0; sh < starShips[s] && sh < 200; sh++) {
-            transformBuffer2 = g.getTransform();
-            float range = 12f + random.nextFloat() * 12f;
-            float angle = random.nextFloat() * 6.28f;
-            g.translate((int) (range * Math.cos(starOrbit[s] + angle)) - 1,
+            float range = 12f + renderRandom.nextFloat() * 12f;
+            float angle = renderRandom.nextFloat() * 6.28f;
+            shipSprites.draw(g, starOwner[s], starOrbit[s] + angle + 3.14f,
+                (int) (range * Math.cos(starOrbit[s] + angle)) - 1,
                 (int) (range * Math.sin(starOrbit[s] + angle)) - 1);
-            g.rotate(starOrbit[s] + angle + 3.14f);
-            g.setColor(Color.gray);
-            g.fillPolygon(wingShapeX, wingShapeY, 3);
-            g.setColor(raceColor[starOwner[s]]);
-            g.fillPolygon(shipShapeX, shipShapeY, 3);
-            g.setTransform(transformBuffer2);
           }
 
           // Render starbase
@@ -624,23 +752,18 @@ public class GalacticConquest extends AbstractGame {
 
       // Render fleets
       for (int r = 0; r < NUMBER_OF_RACES; r++) {
-        for (int sh = 0; sh < MAX_NUMBER_OF_FLEETS_PER_RACE; sh++) {
+        for (int a = 0; a < fleetActiveCount[r]; a++) {
+          int sh = fleetActive[r][a];
           if (fleetShips[r][sh] > 0) {
             int dx = starX[fleetDestination[r][sh]] - starX[fleetOrigin[r][sh]];
             float dy = starY[fleetDestination[r][sh]] - starY[fleetOrigin[r][sh]];
             float fleetDir = (float) Math.atan2(dy, dx);
-            random.setSeed(fleetSeed[r][sh]);
+            renderRandom.setSeed(fleetSeed[r][sh]);
+            int x = (int) (starX[fleetOrigin[r][sh]] + dx * fleetProgress[r][sh]) - 6;
+            int y = starY[fleetOrigin[r][sh]] + (int) (dy * fleetProgress[r][sh]) - 6;
             for (int i = 0; i < fleetShips[r][sh] && i < 50; i++) {
-              transformBuffer = g.getTransform();
-              g.translate((int) (starX[fleetOrigin[r][sh]] + dx * fleetProgress[r][sh]) - 6
-                  + random.nextInt(12), starY[fleetOrigin[r][sh]]
-                  + (int) (dy * fleetProgress[r][sh]) - 6 + random.nextInt(12));
-              g.rotate(fleetDir + 1.57f);
-              g.setColor(Color.gray);
-              g.fillPolygon(wingShapeX, wingShapeY, 3);
-              g.setColor(raceColor[r]);
-              g.fillPolygon(shipShapeX, shipShapeY, 3);
-              g.setTransform(transformBuffer);
+              shipSprites.draw(g, r, fleetDir + 1.57f, x + renderRandom.nextInt(12),
+                  y + renderRandom.nextInt(12));
             }
           }
         }
@@ -754,154 +877,501 @@ public class GalacticConquest extends AbstractGame {
 
       if (mouseY >= 465 && mouseX > 340 && mouseX < 420) {
         // Go! Start the game
-        AI_PRODUCTION_FACTOR = 1.2f;
-        AI_MOVEMENT_DELAY_S = 0.5f;
-
-        if (difficulty == 0) {
-          AI_PRODUCTION_FACTOR = 0.2f;
-          AI_MOVEMENT_DELAY_S = 4f;
-        } else if (difficulty == 1) {
-          AI_PRODUCTION_FACTOR = 0.5f;
-          AI_MOVEMENT_DELAY_S = 2.5f;
-        } else if (difficulty == 2) {
-          AI_PRODUCTION_FACTOR = 0.8f;
-          AI_MOVEMENT_DELAY_S = 1f;
-        }
+        startGame(System.nanoTime());
+      }
+    } else if (gameState == 1) {
+      if (e.getButton() == MouseEvent.BUTTON3) {
+        command(CMD_MOVE_FACTOR);
+      } else {
+        command(CMD_CLICK_STAR, mouseOverStar);
+      }
+    } else {
+      gameState = 0;
+    }
+  }
 
-        speedFactor = 1f;
-        STAR_INFRA_PROGRESS_PER_S = 0.03f;
-        if (speed == 1) {
-          speedFactor = 0.5f;
-          STAR_INFRA_PROGRESS_PER_S = 0.015f;
-        }
+  /**
+   * Carry out a command of the player, recording it for the replay.
+   */
+  private void command(int command, int... args) {
+    if (playback != null) {
+      // Only the replay gives commands
+      return;
+    }
+    if (recording != null && gameState == 1) {
+      recording.record(gameTick, command, args);
+    }
+    execute(command, args);
+  }
 
-        // Generate some stars
-        for (int s = 0; s < NUMBER_OF_STARS; s++) {
-          boolean duplicate;
-          do {
-            starX[s] = 40 + random.nextInt(DISPLAY_WIDTH - 80);
-            starY[s] = 40 + random.nextInt(DISPLAY_HEIGHT - 120);
-            starProduction[s] = 1;
-            starInfra[s] = 0;
-            starOrbit[s] = 0;
-            starOwner[s] = RACE_NEUTRAL;
-            starSeed[s] = random.nextInt(256);
-            starShips[s] = 0;
-            starMovementDelay[s] = random.nextFloat() * AI_MOVEMENT_DELAY_S;
-            starBase[s] = -1;
-            starCollection[s] = false;
-            starSelected[s] = false;
+  private void execute(int command, int[] args) {
+    switch (command) {
+      case CMD_CLICK_STAR -> clickStar(args[0]);
+      case CMD_MOVE_FACTOR -> moveFactor = (moveFactor + 1) % 3;
+      case CMD_SELECT_AREA -> selectArea(args[0], args[1], args[2], args[3]);
+      case CMD_BUILD_BASE -> buildBase(args[0]);
+      case CMD_TOGGLE_COLLECTION -> starCollection[args[0]] = !starCollection[args[0]];
+      case CMD_REWIND -> rewind();
+      default -> throw new IllegalArgumentException("Unknown command " + command);
+    }
+  }
+
+  /**
+   * Carry out the commands of the replay being played back that were given before this update.
+   */
+  private void playBackCommands() {
+    if (playback != null) {
+      while (playback.nextTick() <= gameTick) {
+        execute(playback.next(commandArgs), commandArgs);
+      }
+    }
+  }
+
+  private void clickStar(int star) {
+    if (star != -1) {
+      boolean anySelected = false;
+      // A star was clicked, send selected ships to this star, if any
+      for (int s = 0; s < NUMBER_OF_STARS; s++) {
+
+        if (s != star) {
+
+          if (starSelected[s]) {
+            anySelected = true;
+
+            if (starOwner[s] == playerColor && starShips[s] > 0) {
 
-            duplicate = false;
-            for (int o = 0; o < s; o++) {
-              if (Point2D.distance(starX[s], starY[s], starX[o], starY[o])
-                  < MINIMUM_DISTANCE_BETWEEN_STARS) {
-                duplicate = true;
+              int shipsToMove = starShips[s];
+              if (moveFactor == 1) {
+                shipsToMove = (int) Math.ceil(shipsToMove / 2f);
+              } else if (moveFactor == 2) {
+                shipsToMove = 1;
               }
+
+              launchFleet(playerColor, s, star, shipsToMove);
+              starShips[s] -= shipsToMove;
             }
-          } while (duplicate);
-        }
-        // Assign home stars and reset fleets
-        for (int r = 0; r < NUMBER_OF_RACES; r++) {
-          for (int sh = 0; sh < MAX_NUMBER_OF_FLEETS_PER_RACE; sh++) {
-            fleetShips[r][sh] = 0;
-            fleetSeed[r][sh] = random.nextInt(256);
+            starSelected[s] = false;
           }
+        }
+      }
 
-          boolean duplicate;
-          do {
-            int newStar = random.nextInt(NUMBER_OF_STARS);
-            duplicate = true;
-            if (starOwner[newStar] == RACE_NEUTRAL) {
-              // This star is still unoccupied, find out how close the nearest enemy homestar
-              // is
-              duplicate = false;
-              for (int o = 0; o < NUMBER_OF_STARS; o++) {
-                if (starOwner[o] != RACE_NEUTRAL && o != newStar) {
-                  if (Point2D
-                      .distance(starX[newStar], starY[newStar], starX[o], starY[o])
-                      < MINIMUM_DISTANCE_BETWEEN_HOME_STARS) {
-                    duplicate = true;
-                  }
-                }
-              }
+      if (moveFactor == 0) {
+        deselectAll();
+      }
+
+      // Were none selected? Then select the star that was clicked
+      if (!anySelected && starOwner[star] == playerColor) {
+        starSelected[star] = true;
+      }
+
+    } else {
+
+      deselectAll();
+    }
+  }
+
+  private void selectArea(int x1, int y1, int x2, int y2) {
+    Arrays.fill(starSelected, false);
+    int found = starGrid.inside(x1 + 1, y1 + 1, x2 - 1, y2 - 1, starsFound);
+    for (int i = 0; i < found; i++) {
+      starSelected[starsFound[i]] = starOwner[starsFound[i]] == playerColor;
+    }
+  }
+
+  private void buildBase(int star) {
+    if (starOwner[star] == playerColor && playerBases < maxBases && starProduction[star] >= 0) {
+      // We can build a starbase here
+      starBase[star] = 0;
+      starProduction[star] = 0;
+    }
+  }
+
+  /**
+   * Start a new game with the chosen difficulty, speed and color. Everything random in the game
+   * follows from the seed, so the same seed and player input give the same game.
+   */
+  void startGame(long seed) {
+    this.seed = seed;
+    simRandom.setSeed(seed);
+
+    AI_PRODUCTION_FACTOR = 1.2f;
+    AI_MOVEMENT_DELAY_S = 0.5f;
+
+    if (difficulty == 0) {
+      AI_PRODUCTION_FACTOR = 0.2f;
+      AI_MOVEMENT_DELAY_S = 4f;
+    } else if (difficulty == 1) {
+      AI_PRODUCTION_FACTOR = 0.5f;
+      AI_MOVEMENT_DELAY_S = 2.5f;
+    } else if (difficulty == 2) {
+      AI_PRODUCTION_FACTOR = 0.8f;
+      AI_MOVEMENT_DELAY_S = 1f;
+    }
+
+    speedFactor = 1f;
+    STAR_INFRA_PROGRESS_PER_S = 0.03f;
+    if (speed == 1) {
+      speedFactor = 0.5f;
+      STAR_INFRA_PROGRESS_PER_S = 0.015f;
+    }
+
+    // Generate some stars
+    galaxyGenerator.generate(simRandom, NUMBER_OF_STARS, starX, starY);
+    aiTimers.clear();
+    aiTime = 0;
+    for (int s = 0; s < NUMBER_OF_STARS; s++) {
+      starProduction[s] = 1;
+      starInfra[s] = 0;
+      starOrbit[s] = 0;
+      starOwner[s] = RACE_NEUTRAL;
+      starSeed[s] = simRandom.nextInt(256);
+      starShips[s] = 0;
+      starBase[s] = -1;
+      starCollection[s] = false;
+      starSelected[s] = false;
+      aiTimers.schedule(s, simRandom.nextFloat() * AI_MOVEMENT_DELAY_S);
+    }
+    buildStarGraph();
+    starGrid.build(starX, starY, NUMBER_OF_STARS);
+
+    // Assign home stars and reset fleets
+    int[] homeStars = GalaxyGenerator.pickSpread(simRandom, starX, starY, NUMBER_OF_STARS,
+        NUMBER_OF_RACES, MINIMUM_DISTANCE_BETWEEN_HOME_STARS);
+    for (int r = 0; r < NUMBER_OF_RACES; r++) {
+      resetFleets(r);
+      starOwner[homeStars[r]] = r;
+      starInfra[homeStars[r]] = 1;
+    }
+
+    // Clear leftovers from the previous game
+    explosions.clear();
+    gameTick = 0;
+    recording = playback == null
+        ? new ReplayLog(REPLAY_VERSION, seed, difficulty, speed, playerColor, NUMBER_OF_STARS)
+        : null;
+    autosaveCount = 0;
+    autosaveInterval = AUTOSAVE_INTERVAL_S;
+    collectionIndex = 0;
+    moveFactor = 0;
+
+    // Mouse was clicked, so start game
+    historyVisible = true;
+    isDragging = false;
+    powerHistory.clear();
+    historyInterval = HISTORY_INTERVAL;
+    gameState = 1;
+  }
+
+  /**
+   * Fill the star graph: distances between all stars, and the nearest neighbors of each star.
+   */
+  private void buildStarGraph() {
+    for (int a = 0; a < NUMBER_OF_STARS; a++) {
+      for (int b = a + 1; b < NUMBER_OF_STARS; b++) {
+        starDistances[starPairIndex(a, b)] = (float) Point2D.distance(starX[a], starY[a],
+            starX[b], starY[b]);
+      }
+    }
+
+    // Order other stars on distance, and on star number for equal distances. Distances are never
+    // negative, so their float bits sort the same as their values. Only the nearest are kept, in a
+    // max-heap with the farthest of them on top, so this takes O(n log k) per star instead of
+    // sorting all of them.
+    long[] heap = neighborHeap;
+    for (int a = 0; a < NUMBER_OF_STARS; a++) {
+      int size = 0;
+      for (int b = 0; b < NUMBER_OF_STARS; b++) {
+        if (b == a) {
+          continue;
+        }
+        long key = ((long) Float.floatToIntBits(starDistance(a, b)) << 32) | b;
+        if (size < STAR_NEIGHBORS) {
+          // Sift up from the new leaf
+          int i = size++;
+          while (i > 0 && heap[(i - 1) >>> 1] < key) {
+            heap[i] = heap[(i - 1) >>> 1];
+            i = (i - 1) >>> 1;
+          }
+          heap[i] = key;
+        } else if (key < heap[0]) {
+          // Replace the farthest, and sift it down from the root
+          int i = 0;
+          while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+              break;
             }
-            if (!duplicate) {
-              starOwner[newStar] = r;
-              starInfra[newStar] = 1;
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+              child++;
             }
-          } while (duplicate);
-
+            if (heap[child] <= key) {
+              break;
+            }
+            heap[i] = heap[child];
+            i = child;
+          }
+          heap[i] = key;
         }
+      }
+      Arrays.sort(heap, 0, size);
+      for (int n = 0; n < STAR_NEIGHBORS; n++) {
+        starNeighbors[a][n] = (int) heap[n];
+      }
+    }
+    System.arraycopy(starX, 0, starGraphX, 0, NUMBER_OF_STARS);
+    System.arraycopy(starY, 0, starGraphY, 0, NUMBER_OF_STARS);
+  }
 
-        // Mouse was clicked, so start game
-        historyVisible = true;
-        isDragging = false;
-        historyIndex = 0;
-        historyInterval = HISTORY_INTERVAL;
-        historyWrapped = false;
-        gameState = 1;
+  float starDistance(int a, int b) {
+    if (a == b) {
+      return 0;
+    }
+    return a < b ? starDistances[starPairIndex(a, b)] : starDistances[starPairIndex(b, a)];
+  }
+
+  private static int starPairIndex(int a, int b) {
+    return a * (2 * NUMBER_OF_STARS - a - 1) / 2 + (b - a - 1);
+  }
+
+  /**
+   * Let the AI of every race that has stars with a turn decide on a copy of the galaxy, in
+   * parallel if there is more than one, and then carry out their orders race by race.
+   */
+  private void runAi() {
+    aiRunning.clear();
+    for (int r = 0; r < NUMBER_OF_RACES; r++) {
+      aiOrders[r].count = 0;
+      if (aiTurnCount[r] > 0) {
+        aiTasks[r].reinitialize();
+        aiRunning.add(aiTasks[r]);
       }
-    } else if (gameState == 1) {
-      if (e.getButton() == MouseEvent.BUTTON3) {
-        moveFactor = (moveFactor + 1) % 3;
-      } else {
-        if (mouseOverStar != -1) {
-          boolean anySelected = false;
-          // A star was clicked, send selected ships to this star, if any
-          for (int s = 0; s < NUMBER_OF_STARS; s++) {
+    }
+    if (aiRunning.isEmpty()) {
+      return;
+    }
 
-            if (s != mouseOverStar) {
+    captureView();
+    if (aiRunning.size() == 1) {
+      aiRunning.get(0).invoke();
+    } else {
+      ForkJoinTask.invokeAll(aiRunning);
+    }
 
-              if (starSelected[s]) {
-                anySelected = true;
+    for (int r = 0; r < NUMBER_OF_RACES; r++) {
+      Orders orders = aiOrders[r];
+      for (int o = 0; o < orders.count; o++) {
+        int s = orders.origin[o];
+        int ships = Math.min(orders.ships[o], starShips[s]);
+        if (starOwner[s] == r && ships > 0 && orders.destination[o] != s) {
+          launchFleet(r, s, orders.destination[o], ships);
+          starShips[s] -= ships;
+        }
+      }
+    }
+  }
 
-                if (starOwner[s] == playerColor && starShips[s] > 0) {
+  private void captureView() {
+    System.arraycopy(starOwner, 0, aiView.starOwner, 0, NUMBER_OF_STARS);
+    System.arraycopy(starShips, 0, aiView.starShips, 0, NUMBER_OF_STARS);
+    System.arraycopy(starBase, 0, aiView.starBase, 0, NUMBER_OF_STARS);
 
-                  int shipsToMove = starShips[s];
-                  if (moveFactor == 1) {
-                    shipsToMove = (int) Math.ceil(shipsToMove / 2f);
-                  } else if (moveFactor == 2) {
-                    shipsToMove = 1;
-                  }
+    int fleets = 0;
+    for (int r = 0; r < NUMBER_OF_RACES; r++) {
+      fleets += fleetActiveCount[r];
+    }
+    if (aiView.fleetRace.length < fleets) {
+      aiView.fleetRace = new int[fleets * 2];
+      aiView.fleetOrigin = new int[fleets * 2];
+      aiView.fleetDestination = new int[fleets * 2];
+      aiView.fleetShips = new int[fleets * 2];
+      aiView.fleetProgress = new float[fleets * 2];
+    }
+    int f = 0;
+    for (int r = 0; r < NUMBER_OF_RACES; r++) {
+      for (int a = 0; a < fleetActiveCount[r]; a++) {
+        int fl = fleetActive[r][a];
+        aiView.fleetRace[f] = r;
+        aiView.fleetOrigin[f] = fleetOrigin[r][fl];
+        aiView.fleetDestination[f] = fleetDestination[r][fl];
+        aiView.fleetShips[f] = fleetShips[r][fl];
+        aiView.fleetProgress[f] = fleetProgress[r][fl];
+        f++;
+      }
+    }
+    aiView.fleetCount = f;
+  }
 
-                  // Find available fleet
-                  for (int sh = 0; sh < MAX_NUMBER_OF_FLEETS_PER_RACE; sh++) {
-                    if (fleetShips[playerColor][sh] <= 0) {
-                      // There is a fleet available, so lets move
-                      fleetOrigin[playerColor][sh] = s;
-                      fleetDestination[playerColor][sh] = mouseOverStar;
-                      fleetProgress[playerColor][sh] = 0;
-                      fleetShips[playerColor][sh] = shipsToMove;
-                      starShips[s] -= shipsToMove;
-                      break;
-                    }
-                  }
-                }
-                starSelected[s] = false;
-              }
-            }
-          }
+  private void paintStarfield(Graphics2D g, int width, int height) {
+    g.setColor(Color.black);
+    g.fillRect(0, 0, width, height);
+    renderRandom.setSeed(32);
+    g.setColor(starColor);
+    for (int s = 0; s < 5000; s++) {
+      g.fillRect(renderRandom.nextInt(width), renderRandom.nextInt(height), 1, 1);
+    }
+  }
 
-          if (moveFactor == 0) {
-            deselectAll();
-          }
+  private void paintTitle(Graphics2D g, int width, int height) {
+    g.setStroke(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
+    g.setFont(bigFont);
+    g.setPaint(titlePaint);
+    g.drawString("Galactic Conquest 4k", 70, 200);
+    g.setPaint(titleBarPaint);
+    g.drawLine(70, 200, 730, 200);
+    g.setColor(Color.orange);
+    g.setFont(smallFont);
+    g.drawString("www.basvs.dev", 20, 575);
+  }
 
-          // Were none selected? Then select the star that was clicked
-          if (!anySelected && starOwner[mouseOverStar] == playerColor) {
-            starSelected[mouseOverStar] = true;
-          }
+  private void paintShip(Graphics2D g, int race) {
+    g.setColor(Color.gray);
+    g.fillPolygon(wingShapeX, wingShapeY, 3);
+    g.setColor(raceColor[race]);
+    g.fillPolygon(shipShapeX, shipShapeY, 3);
+  }
 
+  /**
+   * Blow up some ships at this location.
+   */
+  private void explode(int x, int y) {
+    for (int i = 0; i < PARTS_PER_EXPLOSION; i++) {
+      float angle = simRandom.nextFloat() * 6.28f;
+      explosions.spawn(x, y, angle, simRandom.nextFloat() * 0.5f + 0.5f);
+    }
+  }
+
+  /**
+   * Send ships from one star to another in a fleet taken from the pool of the race.
+   */
+  void launchFleet(int r, int origin, int destination, int ships) {
+    int fl;
+    if (fleetFreeCount[r] > 0) {
+      fl = fleetFree[r][--fleetFreeCount[r]];
+    } else {
+      if (fleetsUsed[r] == fleetShips[r].length) {
+        growFleets(r);
+      }
+      fl = fleetsUsed[r]++;
+    }
+    fleetOrigin[r][fl] = origin;
+    fleetDestination[r][fl] = destination;
+    fleetProgress[r][fl] = 0;
+    fleetShips[r][fl] = ships;
+    fleetActive[r][fleetActiveCount[r]++] = fl;
+  }
+
+  /**
+   * Double the fleet pool of a race, instead of dropping orders when all fleets are moving.
+   */
+  private void growFleets(int r) {
+    int capacity = fleetShips[r].length * 2;
+    fleetOrigin[r] = Arrays.copyOf(fleetOrigin[r], capacity);
+    fleetDestination[r] = Arrays.copyOf(fleetDestination[r], capacity);
+    fleetShips[r] = Arrays.copyOf(fleetShips[r], capacity);
+    fleetProgress[r] = Arrays.copyOf(fleetProgress[r], capacity);
+    fleetFree[r] = Arrays.copyOf(fleetFree[r], capacity);
+    fleetActive[r] = Arrays.copyOf(fleetActive[r], capacity);
+    fleetSeed[r] = Arrays.copyOf(fleetSeed[r], capacity);
+    for (int fl = capacity / 2; fl < capacity; fl++) {
+      fleetSeed[r][fl] = simRandom.nextInt(256);
+    }
+  }
+
+  /**
+   * Return destroyed and arrived fleets to the free stacks, keeping the others in launch order.
+   */
+  private void releaseFleets() {
+    for (int r = 0; r < NUMBER_OF_RACES; r++) {
+      int moving = 0;
+      for (int a = 0; a < fleetActiveCount[r]; a++) {
+        int fl = fleetActive[r][a];
+        if (fleetShips[r][fl] > 0) {
+          fleetActive[r][moving++] = fl;
         } else {
+          fleetFree[r][fleetFreeCount[r]++] = fl;
+        }
+      }
+      fleetActiveCount[r] = moving;
+    }
+  }
 
-          deselectAll();
+  /**
+   * Empty the fleet pool of a race, shrinking it back to its initial size.
+   */
+  private void resetFleets(int r) {
+    fleetOrigin[r] = new int[INITIAL_FLEETS_PER_RACE];
+    fleetDestination[r] = new int[INITIAL_FLEETS_PER_RACE];
+    fleetShips[r] = new int[INITIAL_FLEETS_PER_RACE];
+    fleetProgress[r] = new float[INITIAL_FLEETS_PER_RACE];
+    fleetFree[r] = new int[INITIAL_FLEETS_PER_RACE];
+    fleetActive[r] = new int[INITIAL_FLEETS_PER_RACE];
+    fleetSeed[r] = new int[INITIAL_FLEETS_PER_RACE];
+    for (int fl = 0; fl < INITIAL_FLEETS_PER_RACE; fl++) {
+      fleetSeed[r][fl] = simRandom.nextInt(256);
+    }
+    fleetsUsed[r] = 0;
+    fleetFreeCount[r] = 0;
+    fleetActiveCount[r] = 0;
+  }
+
+  /**
+   * Put all moving fleets in the lane table, each lane listing its fleets in order of race and
+   * launch.
+   */
+  private void indexFleetLanes() {
+    int fleets = 0;
+    int capacity = 0;
+    for (int r = 0; r < NUMBER_OF_RACES; r++) {
+      fleets += fleetActiveCount[r];
+      capacity = Math.max(capacity, fleetShips[r].length);
+    }
+    if (laneNext.length < NUMBER_OF_RACES * capacity) {
+      laneNext = new int[NUMBER_OF_RACES * capacity];
+    }
+    if (laneKey.length < fleets * 2) {
+      // Keep the table at most half full so probe sequences stay short
+      laneTableBits = 34 - Integer.numberOfLeadingZeros(fleets);
+      laneKey = new int[1 << laneTableBits];
+      laneHead = new int[1 << laneTableBits];
+    }
+    Arrays.fill(laneKey, -1);
+    for (int r = NUMBER_OF_RACES - 1; r >= 0; r--) {
+      for (int a = fleetActiveCount[r] - 1; a >= 0; a--) {
+        int fl = fleetActive[r][a];
+        if (fleetShips[r][fl] > 0) {
+          int key = fleetOrigin[r][fl] * NUMBER_OF_STARS + fleetDestination[r][fl];
+          int lane = laneSlot(key);
+          if (laneKey[lane] == -1) {
+            laneKey[lane] = key;
+            laneHead[lane] = -1;
+          }
+          int f = fl * NUMBER_OF_RACES + r;
+          laneNext[f] = laneHead[lane];
+          laneHead[lane] = f;
         }
       }
-    } else {
-      gameState = 0;
     }
   }
 
+  /**
+   * The lane table slot for this lane, or -1 if no fleets move along it.
+   */
+  private int findLane(int key) {
+    if (laneKey.length == 0) {
+      return -1;
+    }
+    int lane = laneSlot(key);
+    return laneKey[lane] == -1 ? -1 : lane;
+  }
+
+  private int laneSlot(int key) {
+    int lane = (key * 0x9E3779B9) >>> (32 - laneTableBits);
+    while (laneKey[lane] != -1 && laneKey[lane] != key) {
+      lane = (lane + 1) & (laneKey.length - 1);
+    }
+    return lane;
+  }
+
   private void deselectAll() {
     // Deselect all
     for (int s = 0; s < NUMBER_OF_STARS; s++) {
@@ -932,11 +1402,7 @@ public class GalacticConquest extends AbstractGame {
 
       // Dragged minimum distance?
       if (Point2D.distance(x1, y1, x2, y2) >= MIN_DRAG_DISTANCE) {
-        // Select stars within drag area
-        for (int s = 0; s < NUMBER_OF_STARS; s++) {
-          starSelected[s] = (starX[s] > x1 && starX[s] < x2 && starY[s] > y1 && starY[s] < y2)
-              && starOwner[s] == playerColor;
-        }
+        command(CMD_SELECT_AREA, x1, y1, x2, y2);
       }
     }
   }
@@ -967,24 +1433,418 @@ public class GalacticConquest extends AbstractGame {
       historyVisible = !historyVisible;
     }
 
+    if (keyCode == KeyEvent.VK_R && gameState == 1) {
+      command(CMD_REWIND);
+    }
+    if (keyCode == KeyEvent.VK_F5 && gameState == 1) {
+      saveGame(new File(System.getProperty("user.home"), SAVE_FILE));
+    }
+    if (keyCode == KeyEvent.VK_F6 && recording != null) {
+      saveReplay(new File(System.getProperty("user.home"), REPLAY_FILE));
+    }
+    if (keyCode == KeyEvent.VK_F9 && playback == null) {
+      loadGame(new File(System.getProperty("user.home"), SAVE_FILE));
+    }
+
     // Handle collection point setting and starbase construction
-    if (keyCode == KeyEvent.VK_S) {
+    if (keyCode == KeyEvent.VK_S && mouseOverStar != -1) {
       // Build starbase, if possible
-      if (mouseOverStar != -1 && starOwner[mouseOverStar] == playerColor
-          && playerBases < maxBases && starProduction[mouseOverStar] >= 0) {
-        // We can build a starbase here
-        starBase[mouseOverStar] = 0;
-        starProduction[mouseOverStar] = 0;
-      }
+      command(CMD_BUILD_BASE, mouseOverStar);
     }
 
     if (keyCode == KeyEvent.VK_C && mouseOverStar != -1) {
       // Toggle collection point for this star
-      starCollection[mouseOverStar] = !starCollection[mouseOverStar];
+      command(CMD_TOGGLE_COLLECTION, mouseOverStar);
+    }
+  }
+
+  private void saveReplay(File file) {
+    recording.setEndTick(gameTick);
+    try {
+      recording.write(file.toPath());
+    } catch (IOException e) {
+      e.printStackTrace();
     }
   }
 
+  /**
+   * Read a replay saved by saveReplay().
+   *
+   * @throws IOException if the file can not be read or is not a valid replay
+   */
+  static ReplayLog readReplay(Path file) throws IOException {
+    ReplayLog replay = ReplayLog.read(file, REPLAY_SETTINGS, MAX_COMMAND_ARGS,
+        GalacticConquest::isValidCommand);
+    if (replay.getVersion() != REPLAY_VERSION || replay.getSetting(3) != NUMBER_OF_STARS) {
+      throw new IOException(file + " is a replay of another version of the game");
+    }
+    int difficulty = replay.getSetting(0);
+    int speed = replay.getSetting(1);
+    int playerColor = replay.getSetting(2);
+    if (difficulty < 0 || difficulty > 3 || speed < 0 || speed > 1 || playerColor < 0
+        || playerColor >= NUMBER_OF_RACES) {
+      throw new IOException(file + " has invalid settings");
+    }
+    return replay;
+  }
+
+  private static boolean isValidCommand(int command, int[] args, int count) {
+    return switch (command) {
+      case CMD_CLICK_STAR -> count == 1 && args[0] >= -1 && args[0] < NUMBER_OF_STARS;
+      case CMD_MOVE_FACTOR, CMD_REWIND -> count == 0;
+      case CMD_SELECT_AREA -> count == 4 && args[0] <= args[2] && args[1] <= args[3];
+      case CMD_BUILD_BASE, CMD_TOGGLE_COLLECTION ->
+          count == 1 && args[0] >= 0 && args[0] < NUMBER_OF_STARS;
+      default -> false;
+    };
+  }
+
+  /**
+   * Play a recorded game again, as fast as possible, up to the point where the recording ended.
+   *
+   * @throws IllegalArgumentException if the replay is of another version of the game
+   */
+  void playReplay(ReplayLog replay) throws Exception {
+    if (replay.getVersion() != REPLAY_VERSION || replay.getSetting(3) != NUMBER_OF_STARS) {
+      throw new IllegalArgumentException("Replay is of another version of the game");
+    }
+    // Make sure setup is done before starting
+    simulate(0);
+    difficulty = replay.getSetting(0);
+    speed = replay.getSetting(1);
+    playerColor = replay.getSetting(2);
+    playback = replay;
+    startGame(replay.getSeed());
+    // One tick per update
+    simulate((replay.getEndTick() - gameTick) * UPDATE_DURATION_S);
+    // Commands given after the last update
+    playBackCommands();
+    playback = null;
+  }
+
+  /**
+   * Write the complete state of the game into the buffer, replacing its contents, and return it
+   * ready for reading. If the buffer is null or too small, a larger one is returned instead.
+   */
+  ByteBuffer saveSnapshot(ByteBuffer buffer) {
+    if (buffer == null) {
+      buffer = ByteBuffer.allocate(1 << 16);
+    }
+    while (true) {
+      buffer.clear();
+      try {
+        writeSnapshot(buffer);
+        return buffer.flip();
+      } catch (BufferOverflowException e) {
+        buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+      }
+    }
+  }
+
+  /**
+   * Continue the game from a snapshot written by saveSnapshot(). A broken snapshot may leave the
+   * game half loaded, so whoever loads one that can be broken should keep a snapshot to go back to.
+   *
+   * @throws IllegalArgumentException if the snapshot is of another version or galaxy size, or its
+   *           contents are out of range
+   * @throws BufferUnderflowException if the snapshot is cut short
+   */
+  void loadSnapshot(ByteBuffer in) {
+    if (in.remaining() < 10 || in.getInt() != SNAPSHOT_MAGIC) {
+      throw new IllegalArgumentException("Not a Galactic Conquest snapshot");
+    }
+    short version = in.getShort();
+    if (version != SNAPSHOT_VERSION) {
+      throw new IllegalArgumentException("Unsupported snapshot version " + version);
+    }
+    if (in.getShort() != NUMBER_OF_STARS || in.getShort() != NUMBER_OF_RACES) {
+      throw new IllegalArgumentException("Snapshot is of a galaxy of another size");
+    }
+    readSnapshot(in);
+  }
+
+  private void writeSnapshot(ByteBuffer out) {
+    out.putInt(SNAPSHOT_MAGIC);
+    out.putShort(SNAPSHOT_VERSION);
+    out.putShort((short) NUMBER_OF_STARS);
+    out.putShort((short) NUMBER_OF_RACES);
+
+    // Settings
+    out.putInt(speed);
+    out.putInt(difficulty);
+    out.putInt(playerColor);
+    out.putFloat(speedFactor);
+    out.putFloat(AI_PRODUCTION_FACTOR);
+    out.putFloat(AI_MOVEMENT_DELAY_S);
+    out.putFloat(STAR_INFRA_PROGRESS_PER_S);
+
+    // Game
+    out.putInt(gameState);
+    out.put((byte) (victory ? 1 : 0));
+    out.putLong(seed);
+    out.putLong(simRandom.getState());
+    out.putInt(collectionIndex);
+    out.putInt(moveFactor);
+    out.putInt(playerBases);
+    out.putInt(maxBases);
+    putInts(out, starsPerPlayer, NUMBER_OF_RACES);
+    out.putDouble(aiTime);
+    aiTimers.write(out);
+
+    // Stars
+    putInts(out, starX, NUMBER_OF_STARS);
+    putInts(out, starY, NUMBER_OF_STARS);
+    putInts(out, starOwner, NUMBER_OF_STARS);
+    putInts(out, starShips, NUMBER_OF_STARS);
+    putInts(out, starSeed, NUMBER_OF_STARS);
+    putInts(out, starBase, NUMBER_OF_STARS);
+    putFloats(out, starOrbit, NUMBER_OF_STARS);
+    putFloats(out, starProduction, NUMBER_OF_STARS);
+    putFloats(out, starInfra, NUMBER_OF_STARS);
+    for (int s = 0; s < NUMBER_OF_STARS; s++) {
+      out.put((byte) ((starCollection[s] ? 1 : 0) | (starSelected[s] ? 2 : 0)));
+    }
+
+    // Fleets, including the state of the pools, so fleets keep their slots
+    for (int r = 0; r < NUMBER_OF_RACES; r++) {
+      int capacity = fleetShips[r].length;
+      out.putInt(capacity);
+      out.putInt(fleetsUsed[r]);
+      out.putInt(fleetFreeCount[r]);
+      out.putInt(fleetActiveCount[r]);
+      putInts(out, fleetOrigin[r], capacity);
+      putInts(out, fleetDestination[r], capacity);
+      putInts(out, fleetShips[r], capacity);
+      putInts(out, fleetSeed[r], capacity);
+      putFloats(out, fleetProgress[r], capacity);
+      putInts(out, fleetFree[r], fleetFreeCount[r]);
+      putInts(out, fleetActive[r], fleetActiveCount[r]);
+    }
+
+    // History
+    out.putFloat(historyInterval);
+    out.put((byte) (historyVisible ? 1 : 0));
+    powerHistory.write(out);
+  }
+
+  private void readSnapshot(ByteBuffer in) {
+    speed = getInt(in, 0, 1, "Speed");
+    difficulty = getInt(in, 0, 3, "Difficulty");
+    playerColor = getInt(in, 0, NUMBER_OF_RACES - 1, "Player color");
+    speedFactor = getPositiveFloat(in, "Speed factor");
+    AI_PRODUCTION_FACTOR = getPositiveFloat(in, "AI production factor");
+    AI_MOVEMENT_DELAY_S = getPositiveFloat(in, "AI movement delay");
+    STAR_INFRA_PROGRESS_PER_S = getPositiveFloat(in, "Infrastructure progress");
+
+    gameState = getInt(in, 0, 2, "Game state");
+    victory = in.get() != 0;
+    seed = in.getLong();
+    simRandom.setState(in.getLong());
+    collectionIndex = getInt(in, 0, NUMBER_OF_STARS - 1, "Collection star");
+    moveFactor = getInt(in, 0, moveFactorText.length - 1, "Move factor");
+    playerBases = in.getInt();
+    maxBases = in.getInt();
+    getInts(in, starsPerPlayer, NUMBER_OF_RACES);
+    aiTime = in.getDouble();
+    if (!Double.isFinite(aiTime)) {
+      throw new IllegalArgumentException("AI time " + aiTime + " not finite");
+    }
+    aiTimers.read(in, NUMBER_OF_STARS);
+    // Every star must get one AI turn per update at most
+    if (AI_MOVEMENT_DELAY_S <= UPDATE_DURATION_S
+        || (aiTimers.size() > 0 && aiTimers.nextTime() < aiTime)) {
+      throw new IllegalArgumentException("AI turns out of step with AI time " + aiTime);
+    }
+
+    getInts(in, starX, NUMBER_OF_STARS);
+    checkRange(starX, NUMBER_OF_STARS, 0, DISPLAY_WIDTH, "Star x");
+    getInts(in, starY, NUMBER_OF_STARS);
+    checkRange(starY, NUMBER_OF_STARS, 0, DISPLAY_HEIGHT, "Star y");
+    getInts(in, starOwner, NUMBER_OF_STARS);
+    checkRange(starOwner, NUMBER_OF_STARS, 0, RACE_NEUTRAL, "Star owner");
+    getInts(in, starShips, NUMBER_OF_STARS);
+    getInts(in, starSeed, NUMBER_OF_STARS);
+    getInts(in, starBase, NUMBER_OF_STARS);
+    getFloats(in, starOrbit, NUMBER_OF_STARS);
+    getFloats(in, starProduction, NUMBER_OF_STARS);
+    getFloats(in, starInfra, NUMBER_OF_STARS);
+    for (int s = 0; s < NUMBER_OF_STARS; s++) {
+      byte flags = in.get();
+      starCollection[s] = (flags & 1) != 0;
+      starSelected[s] = (flags & 2) != 0;
+    }
+
+    for (int r = 0; r < NUMBER_OF_RACES; r++) {
+      // Each fleet takes at least 20 bytes, which keeps a broken capacity from running out of memory
+      int capacity = getInt(in, 1, in.remaining() / 20, "Fleet capacity");
+      if (fleetShips[r].length != capacity) {
+        fleetOrigin[r] = new int[capacity];
+        fleetDestination[r] = new int[capacity];
+        fleetShips[r] = new int[capacity];
+        fleetSeed[r] = new int[capacity];
+        fleetProgress[r] = new float[capacity];
+        fleetFree[r] = new int[capacity];
+        fleetActive[r] = new int[capacity];
+      }
+      fleetsUsed[r] = getInt(in, 0, capacity, "Fleets used");
+      fleetFreeCount[r] = getInt(in, 0, fleetsUsed[r], "Free fleets");
+      fleetActiveCount[r] = getInt(in, 0, fleetsUsed[r] - fleetFreeCount[r], "Active fleets");
+      getInts(in, fleetOrigin[r], capacity);
+      getInts(in, fleetDestination[r], capacity);
+      getInts(in, fleetShips[r], capacity);
+      getInts(in, fleetSeed[r], capacity);
+      getFloats(in, fleetProgress[r], capacity);
+      getInts(in, fleetFree[r], fleetFreeCount[r]);
+      checkRange(fleetFree[r], fleetFreeCount[r], 0, fleetsUsed[r] - 1, "Free fleet");
+      getInts(in, fleetActive[r], fleetActiveCount[r]);
+      checkRange(fleetActive[r], fleetActiveCount[r], 0, fleetsUsed[r] - 1, "Active fleet");
+      for (int a = 0; a < fleetActiveCount[r]; a++) {
+        int fl = fleetActive[r][a];
+        checkRange(fleetOrigin[r][fl], 0, NUMBER_OF_STARS - 1, "Fleet origin");
+        checkRange(fleetDestination[r][fl], 0, NUMBER_OF_STARS - 1, "Fleet destination");
+      }
+    }
+
+    historyInterval = in.getFloat();
+    historyVisible = in.get() != 0;
+    powerHistory.read(in);
+
+    // Everything else follows from the stars, or is only for show. Stars only move when the
+    // snapshot is of another galaxy.
+    if (!Arrays.equals(starX, starGraphX) || !Arrays.equals(starY, starGraphY)) {
+      buildStarGraph();
+      starGrid.build(starX, starY, NUMBER_OF_STARS);
+    }
+    explosions.clear();
+    isDragging = false;
+  }
+
+  /**
+   * Read an int that must be between min and max, both included.
+   */
+  private static int getInt(ByteBuffer in, int min, int max, String name) {
+    int value = in.getInt();
+    checkRange(value, min, max, name);
+    return value;
+  }
+
+  /**
+   * Read a float that must be finite and more than zero.
+   */
+  private static float getPositiveFloat(ByteBuffer in, String name) {
+    float value = in.getFloat();
+    if (!(value > 0) || value == Float.POSITIVE_INFINITY) {
+      throw new IllegalArgumentException(name + " " + value + " not positive");
+    }
+    return value;
+  }
+
+  private static void checkRange(int value, int min, int max, String name) {
+    if (value < min || value > max) {
+      throw new IllegalArgumentException(name + " " + value + " not in " + min + ".." + max);
+    }
+  }
+
+  private static void checkRange(int[] values, int count, int min, int max, String name) {
+    for (int i = 0; i < count; i++) {
+      checkRange(values[i], min, max, name);
+    }
+  }
+
+  private static void putInts(ByteBuffer out, int[] values, int count) {
+    out.asIntBuffer().put(values, 0, count);
+    out.position(out.position() + count * 4);
+  }
+
+  private static void putFloats(ByteBuffer out, float[] values, int count) {
+    out.asFloatBuffer().put(values, 0, count);
+    out.position(out.position() + count * 4);
+  }
+
+  private static void getInts(ByteBuffer in, int[] values, int count) {
+    in.asIntBuffer().get(values, 0, count);
+    in.position(in.position() + count * 4);
+  }
+
+  private static void getFloats(ByteBuffer in, float[] values, int count) {
+    in.asFloatBuffer().get(values, 0, count);
+    in.position(in.position() + count * 4);
+  }
+
+  private void autosave() {
+    if (autosaveCount == AUTOSAVES) {
+      // Drop the oldest, reusing its buffer
+      ByteBuffer oldest = autosaves[0];
+      System.arraycopy(autosaves, 1, autosaves, 0, AUTOSAVES - 1);
+      autosaves[AUTOSAVES - 1] = oldest;
+      autosaveCount--;
+    }
+    autosaves[autosaveCount] = saveSnapshot(autosaves[autosaveCount]);
+    autosaveCount++;
+  }
+
+  /**
+   * Go back to the most recent autosave, and forget it so the next rewind goes further back.
+   */
+  private void rewind() {
+    if (autosaveCount > 0) {
+      autosaveCount--;
+      loadSnapshot(autosaves[autosaveCount]);
+      autosaveInterval = AUTOSAVE_INTERVAL_S;
+    }
+  }
+
+  private void saveGame(File file) {
+    saveBuffer = saveSnapshot(saveBuffer);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (saveBuffer.hasRemaining()) {
+        channel.write(saveBuffer);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void loadGame(File file) {
+    // Keep the current game, or the title screen, in case the file turns out to be broken halfway
+    saveBuffer = saveSnapshot(saveBuffer);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      // Read rather than map the file, so it is not kept open and can be saved over right away
+      if (channel.size() > MAX_SAVE_BYTES) {
+        throw new IOException(file + " is too large for a save");
+      }
+      ByteBuffer snapshot = ByteBuffer.allocate((int) channel.size());
+      while (snapshot.hasRemaining() && channel.read(snapshot) >= 0) {
+        // Keep reading
+      }
+      loadSnapshot(snapshot.flip());
+      autosaveCount = 0;
+      autosaveInterval = AUTOSAVE_INTERVAL_S;
+    } catch (IOException | IllegalArgumentException | BufferUnderflowException e) {
+      e.printStackTrace();
+      loadSnapshot(saveBuffer);
+      return;
+    }
+    // There is no telling how the loaded game came about, so it can not be replayed
+    recording = null;
+  }
+
   public static void main(String[] args) throws Exception {
+    if (args.length == 2 && args[0].equals("-replay")) {
+      // Play back a replay without a window, and show how it ended
+      System.setProperty("java.awt.headless", "true");
+      ReplayLog replay = readReplay(new File(args[1]).toPath());
+      GalacticConquest game = new GalacticConquest();
+      long start = System.nanoTime();
+      game.playReplay(replay);
+      game.dispose();
+      System.out.printf("Replayed %.1f s of game time in %d ms, stars per race %s%s%n",
+          game.gameTick * UPDATE_DURATION_S, (System.nanoTime() - start) / 1000000,
+          Arrays.toString(game.starsPerPlayer),
+          game.gameState == 2 ? (game.victory ? ", victory" : ", defeat") : "");
+      return;
+    }
     new GalacticConquest().start();
   }
 }
@@ -0,0 +1,178 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Places stars at random in a rectangle, with at least a minimum distance between any two of them.
+ *
+ * Uses Bridson's Poisson-disk sampling: the area is first filled with as many stars as fit, growing
+ * outward from a random first star, using a grid with at most one star per cell to check distances.
+ * The requested number of stars is then picked at random from those, so they are spread over the
+ * whole area. This takes time in proportion to the size of the area, and never gets stuck.
+ */
+public class GalaxyGenerator {
+
+  // Number of candidates tried around a star before it is considered surrounded
+  private static final int ATTEMPTS = 30;
+
+  private final int left;
+  private final int top;
+  private final int width;
+  private final int height;
+  private final float minDistance;
+
+  /**
+   * @param left smallest x coordinate of a star
+   * @param top smallest y coordinate of a star
+   * @param width stars are placed at x < left + width
+   * @param height stars are placed at y < top + height
+   * @param minDistance minimum distance between two stars
+   */
+  public GalaxyGenerator(int left, int top, int width, int height, float minDistance) {
+    this.left = left;
+    this.top = top;
+    this.width = width;
+    this.height = height;
+    this.minDistance = minDistance;
+  }
+
+  /**
+   * Place count stars, storing their coordinates in starX and starY.
+   *
+   * @throws IllegalArgumentException if the stars do not fit
+   */
+  public void generate(Random random, int count, int[] starX, int[] starY) {
+    float cellSize = minDistance / (float) Math.sqrt(2);
+    int gridWidth = (int) Math.ceil(width / cellSize);
+    int gridHeight = (int) Math.ceil(height / cellSize);
+    int[] grid = new int[gridWidth * gridHeight];
+    Arrays.fill(grid, -1);
+
+    // Every cell holds at most one star
+    int[] x = new int[grid.length];
+    int[] y = new int[grid.length];
+    int[] active = new int[grid.length];
+    int points = 0;
+    int activeCount = 0;
+
+    x[0] = random.nextInt(width);
+    y[0] = random.nextInt(height);
+    grid[(int) (y[0] / cellSize) * gridWidth + (int) (x[0] / cellSize)] = 0;
+    active[activeCount++] = points++;
+
+    while (activeCount > 0) {
+      int a = random.nextInt(activeCount);
+      int p = active[a];
+      boolean placed = false;
+      for (int attempt = 0; attempt < ATTEMPTS && !placed; attempt++) {
+        // Try a spot in the ring between one and two times the minimum distance
+        double angle = random.nextDouble() * Math.PI * 2;
+        double distance = minDistance * (1 + random.nextDouble());
+        int cx = (int) Math.floor(x[p] + Math.cos(angle) * distance);
+        int cy = (int) Math.floor(y[p] + Math.sin(angle) * distance);
+        if (cx < 0 || cy < 0 || cx >= width || cy >= height) {
+          continue;
+        }
+        int gx = (int) (cx / cellSize);
+        int gy = (int) (cy / cellSize);
+        if (isFree(grid, gridWidth, gridHeight, gx, gy, cx, cy, x, y)) {
+          x[points] = cx;
+          y[points] = cy;
+          grid[gy * gridWidth + gx] = points;
+          active[activeCount++] = points++;
+          placed = true;
+        }
+      }
+      if (!placed) {
+        // Surrounded, so take it out of the active list
+        active[a] = active[--activeCount];
+      }
+    }
+
+    if (points < count) {
+      throw new IllegalArgumentException("Only " + points + " of " + count + " stars fit in "
+          + width + "x" + height + " at a distance of " + minDistance);
+    }
+
+    // Pick the stars at random
+    for (int s = 0; s < count; s++) {
+      int pick = s + random.nextInt(points - s);
+      int px = x[pick];
+      int py = y[pick];
+      x[pick] = x[s];
+      y[pick] = y[s];
+      starX[s] = left + px;
+      starY[s] = top + py;
+    }
+  }
+
+  /**
+   * Pick count of the stars that are at least minDistance apart, for instance as home stars. If
+   * there are not enough of those, the remaining picks are the stars furthest away from the ones
+   * already picked.
+   */
+  public static int[] pickSpread(Random random, int[] starX, int[] starY, int stars, int count,
+      float minDistance) {
+    int[] order = new int[stars];
+    for (int s = 0; s < stars; s++) {
+      order[s] = s;
+    }
+    for (int s = stars - 1; s > 0; s--) {
+      int swap = random.nextInt(s + 1);
+      int t = order[s];
+      order[s] = order[swap];
+      order[swap] = t;
+    }
+
+    int[] picks = new int[count];
+    int picked = 0;
+    for (int i = 0; i < stars && picked < count; i++) {
+      if (nearestPick(order[i], picks, picked, starX, starY) >= minDistance * minDistance) {
+        picks[picked++] = order[i];
+      }
+    }
+    while (picked < count) {
+      int furthest = -1;
+      long furthestDistance = -1;
+      for (int s = 0; s < stars; s++) {
+        long d = nearestPick(s, picks, picked, starX, starY);
+        if (d > furthestDistance) {
+          furthest = s;
+          furthestDistance = d;
+        }
+      }
+      picks[picked++] = furthest;
+    }
+    return picks;
+  }
+
+  /**
+   * Squared distance from a star to the nearest of the picked stars.
+   */
+  private static long nearestPick(int s, int[] picks, int picked, int[] starX, int[] starY) {
+    long nearest = Long.MAX_VALUE;
+    for (int p = 0; p < picked; p++) {
+      long dx = starX[s] - starX[picks[p]];
+      long dy = starY[s] - starY[picks[p]];
+      nearest = Math.min(nearest, dx * dx + dy * dy);
+    }
+    return nearest;
+  }
+
+  private boolean isFree(int[] grid, int gridWidth, int gridHeight, int gx, int gy, int cx,
+      int cy, int[] x, int[] y) {
+    float minDistanceSq = minDistance * minDistance;
+    for (int ny = Math.max(0, gy - 2); ny <= Math.min(gridHeight - 1, gy + 2); ny++) {
+      for (int nx = Math.max(0, gx - 2); nx <= Math.min(gridWidth - 1, gx + 2); nx++) {
+        int other = grid[ny * gridWidth + nx];
+        if (other != -1) {
+          float dx = x[other] - cx;
+          float dy = y[other] - cy;
+          if (dx * dx + dy * dy < minDistanceSq) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Frame timing statistics recorded by AbstractGame: how long updating, rendering and showing the
+ * result take per frame, and how many updates are done per frame. Times are recorded in
+ * nanoseconds.
+ *
+ * The update and render statistics are each recorded by the thread doing that work. As reset() is
+ * called from elsewhere, typically a JMX client, it only asks for a reset, which those threads
+ * carry out before recording their next frame. Until then the old values are still reported.
+ */
+public class GameStats implements GameStatsMBean {
+
+  private static final double NS_PER_MS = 1_000_000.0;
+
+  final Histogram updateTime = new Histogram();
+  final Histogram renderTime = new Histogram();
+  final Histogram displayTime = new Histogram();
+  final Histogram updatesPerFrame = new Histogram();
+  volatile double droppedTime = 0;
+
+  private volatile boolean updateResetRequested = false;
+  private volatile boolean renderResetRequested = false;
+
+  @Override
+  public long getFrames() {
+    return updatesPerFrame.getCount();
+  }
+
+  @Override
+  public double getUpdateTimeMeanMs() {
+    return updateTime.getMean() / NS_PER_MS;
+  }
+
+  @Override
+  public double getUpdateTimeP99Ms() {
+    return updateTime.getPercentile(99) / NS_PER_MS;
+  }
+
+  @Override
+  public double getUpdateTimeMaxMs() {
+    return updateTime.getMax() / NS_PER_MS;
+  }
+
+  @Override
+  public double getRenderTimeMeanMs() {
+    return renderTime.getMean() / NS_PER_MS;
+  }
+
+  @Override
+  public double getRenderTimeP99Ms() {
+    return renderTime.getPercentile(99) / NS_PER_MS;
+  }
+
+  @Override
+  public double getRenderTimeMaxMs() {
+    return renderTime.getMax() / NS_PER_MS;
+  }
+
+  @Override
+  public double getDisplayTimeMeanMs() {
+    return displayTime.getMean() / NS_PER_MS;
+  }
+
+  @Override
+  public double getDisplayTimeP99Ms() {
+    return displayTime.getPercentile(99) / NS_PER_MS;
+  }
+
+  @Override
+  public double getDisplayTimeMaxMs() {
+    return displayTime.getMax() / NS_PER_MS;
+  }
+
+  @Override
+  public double getUpdatesPerFrameMean() {
+    return updatesPerFrame.getMean();
+  }
+
+  @Override
+  public long getUpdatesPerFrameMax() {
+    return updatesPerFrame.getMax();
+  }
+
+  @Override
+  public double getDroppedTimeS() {
+    return droppedTime;
+  }
+
+  @Override
+  public void reset() {
+    updateResetRequested = true;
+    renderResetRequested = true;
+  }
+
+  /**
+   * Carry out a requested reset of the update statistics. Called by the thread that updates.
+   */
+  void resetUpdateStatsIfRequested() {
+    if (updateResetRequested) {
+      updateResetRequested = false;
+      updateTime.reset();
+      updatesPerFrame.reset();
+      droppedTime = 0;
+    }
+  }
+
+  /**
+   * Carry out a requested reset of the render statistics. Called by the thread that renders.
+   */
+  void resetRenderStatsIfRequested() {
+    if (renderResetRequested) {
+      renderResetRequested = false;
+      renderTime.reset();
+      displayTime.reset();
+    }
+  }
+
+  /**
+   * One line summary, as shown in the overlay.
+   */
+  public String summary() {
+    return String.format("update %.2f/%.2f  render %.2f/%.2f  show %.2f/%.2f ms (mean/p99)"
+            + "  updates/frame %.2f", getUpdateTimeMeanMs(), getUpdateTimeP99Ms(),
+        getRenderTimeMeanMs(), getRenderTimeP99Ms(), getDisplayTimeMeanMs(),
+        getDisplayTimeP99Ms(), getUpdatesPerFrameMean());
+  }
+}
@@ -0,0 +1,36 @@
+/**
+ * JMX view on the frame timing statistics of a running game. Times are in milliseconds.
+ */
+public interface GameStatsMBean {
+
+  long getFrames();
+
+  double getUpdateTimeMeanMs();
+
+  double getUpdateTimeP99Ms();
+
+  double getUpdateTimeMaxMs();
+
+  double getRenderTimeMeanMs();
+
+  double getRenderTimeP99Ms();
+
+  double getRenderTimeMaxMs();
+
+  double getDisplayTimeMeanMs();
+
+  double getDisplayTimeP99Ms();
+
+  double getDisplayTimeMaxMs();
+
+  double getUpdatesPerFrameMean();
+
+  long getUpdatesPerFrameMax();
+
+  double getDroppedTimeS();
+
+  /**
+   * Clear all statistics, as soon as the game starts its next frame.
+   */
+  void reset();
+}
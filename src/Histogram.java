@@ -0,0 +1,78 @@
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values, in the style of HdrHistogram: values are counted in
+ * buckets that double in size, each split into 32 to 64 sub-buckets, so recording is a few shifts
+ * and percentiles are accurate to about 3%. There is no allocation after construction.
+ *
+ * Meant to be written by one thread. Reading from another thread is safe, but may give slightly
+ * inconsistent results while values are being recorded.
+ */
+public class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+  private static final int MAX_BUCKET = 63 - SUB_BUCKET_BITS;
+
+  private final long[] counts = new long[(MAX_BUCKET + 2) * SUB_BUCKET_HALF];
+  private long totalCount = 0;
+  private long total = 0;
+  private long max = 0;
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts[indexOf(value)]++;
+    totalCount++;
+    total += value;
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  public long getCount() {
+    return totalCount;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public double getMean() {
+    return totalCount == 0 ? 0 : (double) total / totalCount;
+  }
+
+  /**
+   * The value below which the given percentage (0..100) of the recorded values lie.
+   */
+  public long getPercentile(double percentile) {
+    long countAtPercentile = (long) Math.ceil(totalCount * percentile / 100.0);
+    long count = 0;
+    for (int i = 0; i < counts.length; i++) {
+      count += counts[i];
+      if (count >= countAtPercentile && count > 0) {
+        return Math.min(highestValueAt(i), max);
+      }
+    }
+    return 0;
+  }
+
+  public void reset() {
+    Arrays.fill(counts, 0);
+    totalCount = 0;
+    total = 0;
+    max = 0;
+  }
+
+  private static int indexOf(long value) {
+    int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+    return bucket * SUB_BUCKET_HALF + (int) (value >>> bucket);
+  }
+
+  private static long highestValueAt(int index) {
+    int bucket = Math.max(0, (index >> (SUB_BUCKET_BITS - 1)) - 1);
+    long subBucket = index - (long) bucket * SUB_BUCKET_HALF;
+    return ((subBucket + 1) << bucket) - 1;
+  }
+}
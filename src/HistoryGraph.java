@@ -0,0 +1,206 @@
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * Line graph of a number of series over time, one pixel column per step, that scrolls to the left
+ * as samples are added. Several samples can be combined into a column, in which case the column
+ * shows their range (min to max), so the graph can cover a long history at a fixed width.
+ *
+ * Columns are drawn into an offscreen image once, when they are complete. The image is used as a
+ * ring of columns, so scrolling is done by drawing it in two parts instead of moving any pixels.
+ */
+public class HistoryGraph {
+
+  private final Color[] colors;
+  private final int columns;
+  private final int samplesPerColumn;
+  private final int height;
+  private final float scale;
+
+  // Per series, the range of the samples in each complete column and the last sample in it
+  private final IntRingBuffer[] columnMin;
+  private final IntRingBuffer[] columnMax;
+  private final IntRingBuffer[] columnLast;
+
+  // The column being filled
+  private final int[] min;
+  private final int[] max;
+  private int samples = 0;
+
+  private BufferedImage image;
+  private long columnsPainted = 0;
+
+  /**
+   * @param colors color of each series
+   * @param columns width of the graph in pixels
+   * @param samplesPerColumn number of samples combined into one column
+   * @param height height of the graph in pixels
+   * @param scale pixels per unit of the sample values
+   */
+  public HistoryGraph(Color[] colors, int columns, int samplesPerColumn, int height, float scale) {
+    this.colors = colors;
+    this.columns = columns;
+    this.samplesPerColumn = samplesPerColumn;
+    this.height = height;
+    this.scale = scale;
+    columnMin = new IntRingBuffer[colors.length];
+    columnMax = new IntRingBuffer[colors.length];
+    columnLast = new IntRingBuffer[colors.length];
+    for (int s = 0; s < colors.length; s++) {
+      columnMin[s] = new IntRingBuffer(columns);
+      columnMax[s] = new IntRingBuffer(columns);
+      columnLast[s] = new IntRingBuffer(columns);
+    }
+    min = new int[colors.length];
+    max = new int[colors.length];
+  }
+
+  /**
+   * Add a sample for each series.
+   */
+  public void add(int[] values) {
+    for (int s = 0; s < colors.length; s++) {
+      if (samples == 0 || values[s] < min[s]) {
+        min[s] = values[s];
+      }
+      if (samples == 0 || values[s] > max[s]) {
+        max[s] = values[s];
+      }
+    }
+    samples++;
+    if (samples == samplesPerColumn) {
+      for (int s = 0; s < colors.length; s++) {
+        columnMin[s].add(min[s]);
+        columnMax[s].add(max[s]);
+        columnLast[s].add(values[s]);
+      }
+      samples = 0;
+    }
+  }
+
+  public void clear() {
+    for (int s = 0; s < colors.length; s++) {
+      columnMin[s].clear();
+      columnMax[s].clear();
+      columnLast[s].clear();
+    }
+    samples = 0;
+    columnsPainted = 0;
+    if (image != null) {
+      clearImage();
+    }
+  }
+
+  /**
+   * Write all samples, for read().
+   */
+  public void write(ByteBuffer out) {
+    out.putInt(samples);
+    for (int s = 0; s < colors.length; s++) {
+      out.putInt(min[s]);
+      out.putInt(max[s]);
+      columnMin[s].write(out);
+      columnMax[s].write(out);
+      columnLast[s].write(out);
+    }
+  }
+
+  /**
+   * Replace all samples with what was written by write().
+   *
+   * @throws IllegalArgumentException if the data can not have been written by write()
+   */
+  public void read(ByteBuffer in) {
+    samples = in.getInt();
+    if (samples < 0 || samples >= samplesPerColumn) {
+      throw new IllegalArgumentException("Can not read " + samples + " samples into a column");
+    }
+    for (int s = 0; s < colors.length; s++) {
+      min[s] = in.getInt();
+      max[s] = in.getInt();
+      columnMin[s].read(in);
+      columnMax[s].read(in);
+      columnLast[s].read(in);
+    }
+    columnsPainted = 0;
+    if (image != null) {
+      clearImage();
+    }
+  }
+
+  /**
+   * Draw the graph with its top left corner at (x, y), the most recent column at the right.
+   */
+  public void draw(Graphics2D g, int x, int y) {
+    if (image == null) {
+      image = g.getDeviceConfiguration().createCompatibleImage(columns, height,
+          Transparency.TRANSLUCENT);
+      columnsPainted = 0;
+    }
+    paintNewColumns();
+
+    long added = columnLast[0].added();
+    int size = columnLast[0].size();
+    if (added <= columns) {
+      g.drawImage(image, x, y, null);
+    } else {
+      // The oldest column is somewhere in the middle of the image
+      int oldest = (int) (added % columns);
+      int split = columns - oldest;
+      g.drawImage(image, x, y, x + split, y + height, oldest, 0, columns, height, null);
+      g.drawImage(image, x + split, y, x + size, y + height, 0, 0, oldest, height, null);
+    }
+  }
+
+  private void paintNewColumns() {
+    long added = columnLast[0].added();
+    if (columnsPainted == added) {
+      return;
+    }
+    int size = columnLast[0].size();
+    long first = Math.max(columnsPainted, added - size);
+    Graphics2D ig = image.createGraphics();
+    for (long c = first; c < added; c++) {
+      int x = (int) (c % columns);
+      int index = (int) (c - (added - size));
+      clearColumn(ig, x);
+      for (int s = 0; s < colors.length; s++) {
+        int low = columnMin[s].get(index);
+        int high = columnMax[s].get(index);
+        if (index > 0) {
+          // Connect to the previous column
+          int previous = columnLast[s].get(index - 1);
+          low = Math.min(low, previous);
+          high = Math.max(high, previous);
+        }
+        ig.setColor(colors[s]);
+        ig.drawLine(x, toY(high), x, toY(low));
+      }
+    }
+    ig.dispose();
+    columnsPainted = added;
+  }
+
+  private int toY(int value) {
+    return height - 1 - (int) (value * scale);
+  }
+
+  private void clearColumn(Graphics2D ig, int x) {
+    Composite composite = ig.getComposite();
+    ig.setComposite(AlphaComposite.Clear);
+    ig.fillRect(x, 0, 1, height);
+    ig.setComposite(composite);
+  }
+
+  private void clearImage() {
+    Graphics2D ig = image.createGraphics();
+    ig.setComposite(AlphaComposite.Clear);
+    ig.fillRect(0, 0, columns, height);
+    ig.dispose();
+  }
+}
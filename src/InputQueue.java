@@ -0,0 +1,53 @@
+import java.awt.event.InputEvent;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring buffer handing input events from the AWT event thread to the game thread. There
+ * must be only one thread offering events and one thread polling them.
+ */
+public class InputQueue {
+
+  private final InputEvent[] events;
+  private final int mask;
+  // Next position to read, only moved by the consumer
+  private final AtomicLong head = new AtomicLong();
+  // Next position to write, only moved by the producer
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * @param capacity maximum number of queued events, rounded up to a power of two
+   */
+  public InputQueue(int capacity) {
+    int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+    events = new InputEvent[size];
+    mask = size - 1;
+  }
+
+  /**
+   * Add an event to the queue. Returns false, dropping the event, if the queue is full.
+   */
+  public boolean offer(InputEvent event) {
+    long t = tail.get();
+    if (t - head.get() == events.length) {
+      return false;
+    }
+    events[(int) t & mask] = event;
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  /**
+   * Take the oldest event from the queue, or null if it is empty.
+   */
+  public InputEvent poll() {
+    long h = head.get();
+    if (h == tail.get()) {
+      return null;
+    }
+    int index = (int) h & mask;
+    InputEvent event = events[index];
+    events[index] = null;
+    head.lazySet(h + 1);
+    return event;
+  }
+}
@@ -0,0 +1,78 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed size buffer of the most recently added ints. When full, adding a value overwrites the
+ * oldest one.
+ */
+public class IntRingBuffer {
+
+  private final int[] values;
+  private long added = 0;
+
+  public IntRingBuffer(int capacity) {
+    values = new int[capacity];
+  }
+
+  public void add(int value) {
+    values[(int) (added % values.length)] = value;
+    added++;
+  }
+
+  /**
+   * The value at this position, counting from the oldest value still in the buffer.
+   */
+  public int get(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return values[(int) ((added - size() + index) % values.length)];
+  }
+
+  public int size() {
+    return (int) Math.min(added, values.length);
+  }
+
+  public int capacity() {
+    return values.length;
+  }
+
+  /**
+   * Number of values added since construction or the last clear, including overwritten ones.
+   */
+  public long added() {
+    return added;
+  }
+
+  public void clear() {
+    added = 0;
+  }
+
+  /**
+   * Write the values in the buffer, and how many were added, for read().
+   */
+  public void write(ByteBuffer out) {
+    out.putLong(added);
+    out.putInt(size());
+    for (int i = 0; i < size(); i++) {
+      out.putInt(get(i));
+    }
+  }
+
+  /**
+   * Replace the contents with what was written by write().
+   *
+   * @throws IllegalArgumentException if the data can not have been written by write()
+   */
+  public void read(ByteBuffer in) {
+    long count = in.getLong();
+    int size = in.getInt();
+    if (count < 0 || size != Math.min(count, values.length)) {
+      throw new IllegalArgumentException("Can not read " + size + " of " + count + " values into "
+          + values.length);
+    }
+    for (int i = 0; i < size; i++) {
+      values[(int) ((count - size + i) % values.length)] = in.getInt();
+    }
+    added = count;
+  }
+}
@@ -0,0 +1,113 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+
+/**
+ * Pool of short lived particles flying out in a straight line from where they were spawned, such
+ * as the debris of an explosion. Particles fade out as their remaining life goes from 1 to 0.
+ *
+ * Live particles are kept packed together in a ring buffer in order of spawning, so spawning takes
+ * constant time and updating and rendering take time in proportion to the number of live
+ * particles. When the pool is full, a new particle replaces the oldest one. Nothing is allocated
+ * after construction.
+ */
+public class Particles {
+
+  private static final int ALPHA_LEVELS = 256;
+
+  private final int capacity;
+  private final float spread;
+  private final Color[] colors = new Color[ALPHA_LEVELS];
+
+  private final int[] originX;
+  private final int[] originY;
+  private final float[] dirX;
+  private final float[] dirY;
+  private final float[] life;
+
+  // Slot of the oldest live particle, and the number of live particles
+  private int head = 0;
+  private int count = 0;
+
+  /**
+   * @param capacity maximum number of live particles
+   * @param color color of the particles, the alpha is ignored
+   * @param spread distance a particle travels over its full life
+   */
+  public Particles(int capacity, Color color, float spread) {
+    this.capacity = capacity;
+    this.spread = spread;
+    for (int a = 0; a < ALPHA_LEVELS; a++) {
+      colors[a] = new Color(color.getRed(), color.getGreen(), color.getBlue(), a);
+    }
+    originX = new int[capacity];
+    originY = new int[capacity];
+    dirX = new float[capacity];
+    dirY = new float[capacity];
+    life = new float[capacity];
+  }
+
+  /**
+   * Add a particle starting at (x, y) and moving in the direction of the angle (in radians).
+   */
+  public void spawn(int x, int y, float angle, float life) {
+    int p = head + count;
+    if (p >= capacity) {
+      p -= capacity;
+    }
+    if (count == capacity) {
+      // Full, so the new particle takes the place of the oldest one
+      head = head + 1 == capacity ? 0 : head + 1;
+    } else {
+      count++;
+    }
+    originX[p] = x;
+    originY[p] = y;
+    dirX[p] = (float) Math.sin(angle);
+    dirY[p] = (float) Math.cos(angle);
+    this.life[p] = life;
+  }
+
+  /**
+   * Age all particles, and remove the ones that have run out of life.
+   */
+  public void update(float elapsed) {
+    int read = head;
+    int write = head;
+    int live = 0;
+    for (int i = 0; i < count; i++) {
+      float l = life[read] - elapsed;
+      if (l > 0f) {
+        originX[write] = originX[read];
+        originY[write] = originY[read];
+        dirX[write] = dirX[read];
+        dirY[write] = dirY[read];
+        life[write] = l;
+        write = write + 1 == capacity ? 0 : write + 1;
+        live++;
+      }
+      read = read + 1 == capacity ? 0 : read + 1;
+    }
+    count = live;
+  }
+
+  public void render(Graphics2D g, int size) {
+    int p = head;
+    for (int i = 0; i < count; i++) {
+      float l = Math.min(life[p], 1f);
+      g.setColor(colors[(int) (l * (ALPHA_LEVELS - 1))]);
+      float dist = (1f - l) * spread;
+      g.fillOval((int) (dirX[p] * dist) + originX[p], (int) (dirY[p] * dist) + originY[p], size,
+          size);
+      p = p + 1 == capacity ? 0 : p + 1;
+    }
+  }
+
+  public void clear() {
+    head = 0;
+    count = 0;
+  }
+
+  public int size() {
+    return count;
+  }
+}
@@ -0,0 +1,227 @@
+import java.util.Arrays;
+
+/**
+ * Uniform grid over a fixed set of points, for finding the points near a position or inside a
+ * rectangle without looking at all of them. The points of each cell are stored together in one
+ * array, so building takes time in proportion to the number of points and cells.
+ *
+ * The grid keeps its own copy of the positions, so it has to be built again when points move.
+ * Queries only read the grid, so several threads can query it at the same time.
+ */
+public class PointGrid {
+
+  private final int cellSize;
+
+  private int[] pointX = new int[0];
+  private int[] pointY = new int[0];
+  private int left;
+  private int top;
+  private int columns = 0;
+  private int rows = 0;
+  // Points of cell c are cellPoints[cellStart[c]] up to cellPoints[cellStart[c + 1]]
+  private int[] cellStart = new int[1];
+  private int[] cellPoints = new int[0];
+  // Coordinates of cellPoints, so looking through a cell reads memory in order
+  private int[] cellX = new int[0];
+  private int[] cellY = new int[0];
+  // Numbers of the points that are in the grid
+  private int[] listed = new int[0];
+  // Sums of the exact coordinates of the points of each cell, when built from float positions
+  private double[] cellSumX = new double[0];
+  private double[] cellSumY = new double[0];
+
+  /**
+   * @param cellSize width and height of a cell, best about the size of a typical query
+   */
+  public PointGrid(int cellSize) {
+    this.cellSize = cellSize;
+  }
+
+  /**
+   * Index the first count points, numbered by their position in the arrays.
+   */
+  public void build(int[] x, int[] y, int count) {
+    ensureCapacity(count, count);
+    for (int p = 0; p < count; p++) {
+      pointX[p] = x[p];
+      pointY[p] = y[p];
+      listed[p] = p;
+    }
+    index(count);
+  }
+
+  /**
+   * Index the first count of the listed points, numbered by their position in the arrays, with
+   * their coordinates rounded down. Meant for points that move, as it only allocates when there are
+   * more points than before.
+   */
+  public void build(float[] x, float[] y, int[] points, int count) {
+    ensureCapacity(x.length, count);
+    for (int i = 0; i < count; i++) {
+      int p = points[i];
+      pointX[p] = (int) Math.floor(x[p]);
+      pointY[p] = (int) Math.floor(y[p]);
+      listed[i] = p;
+    }
+    index(count);
+
+    int cells = columns * rows;
+    if (cellSumX.length < cells) {
+      cellSumX = new double[cells];
+      cellSumY = new double[cells];
+    }
+    for (int c = 0; c < cells; c++) {
+      double sumX = 0, sumY = 0;
+      for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+        sumX += x[cellPoints[i]];
+        sumY += y[cellPoints[i]];
+      }
+      cellSumX[c] = sumX;
+      cellSumY[c] = sumY;
+    }
+  }
+
+  private void ensureCapacity(int points, int count) {
+    if (pointX.length < points) {
+      pointX = new int[points];
+      pointY = new int[points];
+    }
+    if (listed.length < count) {
+      listed = new int[count];
+      cellPoints = new int[count];
+      cellX = new int[count];
+      cellY = new int[count];
+    }
+  }
+
+  private void index(int count) {
+    left = count == 0 ? 0 : pointX[listed[0]];
+    top = count == 0 ? 0 : pointY[listed[0]];
+    int right = left;
+    int bottom = top;
+    for (int i = 1; i < count; i++) {
+      int p = listed[i];
+      left = Math.min(left, pointX[p]);
+      top = Math.min(top, pointY[p]);
+      right = Math.max(right, pointX[p]);
+      bottom = Math.max(bottom, pointY[p]);
+    }
+    columns = (right - left) / cellSize + 1;
+    rows = (bottom - top) / cellSize + 1;
+    int cells = columns * rows;
+
+    // Count the points per cell, add up the counts to get where each cell ends, then fill every
+    // cell from the back, so the points of a cell stay in the order they were listed
+    if (cellStart.length < cells + 1) {
+      cellStart = new int[cells + 1];
+    } else {
+      Arrays.fill(cellStart, 0, cells + 1, 0);
+    }
+    for (int i = 0; i < count; i++) {
+      cellStart[cellOf(listed[i])]++;
+    }
+    for (int c = 1; c < cells; c++) {
+      cellStart[c] += cellStart[c - 1];
+    }
+    cellStart[cells] = count;
+    for (int i = count - 1; i >= 0; i--) {
+      int p = listed[i];
+      int i2 = --cellStart[cellOf(p)];
+      cellPoints[i2] = p;
+      cellX[i2] = pointX[p];
+      cellY[i2] = pointY[p];
+    }
+  }
+
+  /**
+   * The point nearest to (x, y) closer than the radius, or -1 if there is none. Of points at the
+   * same distance the lowest numbered one is returned.
+   */
+  public int nearest(int x, int y, int radius) {
+    int found = -1;
+    long foundDistance = (long) radius * radius;
+    int c1 = Math.max(0, Math.floorDiv(x - radius - left, cellSize));
+    int c2 = Math.min(columns - 1, Math.floorDiv(x + radius - left, cellSize));
+    int r1 = Math.max(0, Math.floorDiv(y - radius - top, cellSize));
+    int r2 = Math.min(rows - 1, Math.floorDiv(y + radius - top, cellSize));
+    for (int row = r1; row <= r2; row++) {
+      for (int column = c1; column <= c2; column++) {
+        int cell = row * columns + column;
+        for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+          int p = cellPoints[i];
+          long dx = cellX[i] - x;
+          long dy = cellY[i] - y;
+          long d = dx * dx + dy * dy;
+          if (d < foundDistance || (d == foundDistance && found != -1 && p < found)) {
+            found = p;
+            foundDistance = d;
+          }
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Put the points with x1 <= x <= x2 and y1 <= y <= y2 in result, and return how many there are.
+   * The result array must be large enough to hold all points.
+   */
+  public int inside(int x1, int y1, int x2, int y2, int[] result) {
+    int count = 0;
+    int c1 = Math.max(0, Math.floorDiv(x1 - left, cellSize));
+    int c2 = Math.min(columns - 1, Math.floorDiv(x2 - left, cellSize));
+    int r1 = Math.max(0, Math.floorDiv(y1 - top, cellSize));
+    int r2 = Math.min(rows - 1, Math.floorDiv(y2 - top, cellSize));
+    for (int row = r1; row <= r2; row++) {
+      for (int column = c1; column <= c2; column++) {
+        int cell = row * columns + column;
+        for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+          if (cellX[i] >= x1 && cellX[i] <= x2 && cellY[i] >= y1 && cellY[i] <= y2) {
+            result[count++] = cellPoints[i];
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Count the points of the cells whose center, the average position of their points, is closer to
+   * (x, y) than the radius, as if all points of a cell were at its center. Takes as long however
+   * many points there are in a cell, and a cell with one point counts just as that point would. Puts
+   * the sums of the x and y coordinates of the points counted in sum and returns how many there
+   * are. Only for grids built from float positions.
+   */
+  public int sumNear(float x, float y, float radius, double[] sum) {
+    int count = 0;
+    double sumX = 0, sumY = 0;
+    double radiusSq = (double) radius * radius;
+    // The center of a cell can be up to a pixel past it, as positions are rounded down
+    int c1 = Math.max(0, Math.floorDiv((int) Math.floor(x - radius) - 1 - left, cellSize));
+    int c2 = Math.min(columns - 1, Math.floorDiv((int) Math.floor(x + radius) - left, cellSize));
+    int r1 = Math.max(0, Math.floorDiv((int) Math.floor(y - radius) - 1 - top, cellSize));
+    int r2 = Math.min(rows - 1, Math.floorDiv((int) Math.floor(y + radius) - top, cellSize));
+    for (int row = r1; row <= r2; row++) {
+      for (int column = c1; column <= c2; column++) {
+        int cell = row * columns + column;
+        int n = cellStart[cell + 1] - cellStart[cell];
+        if (n > 0) {
+          double dx = x - cellSumX[cell] / n;
+          double dy = y - cellSumY[cell] / n;
+          if (dx * dx + dy * dy < radiusSq) {
+            count += n;
+            sumX += cellSumX[cell];
+            sumY += cellSumY[cell];
+          }
+        }
+      }
+    }
+    sum[0] = sumX;
+    sum[1] = sumY;
+    return count;
+  }
+
+  private int cellOf(int p) {
+    return ((pointY[p] - top) / cellSize) * columns + (pointX[p] - left) / cellSize;
+  }
+}
@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Append-only log of the commands a player gave during a game, each with the number of the update
+ * it was given before. Together with the seed and settings the game started with, this is enough
+ * to play the game again exactly, as long as the game is deterministic.
+ *
+ * Commands are stored as variable length numbers: the number of updates since the previous
+ * command, the command, the number of arguments and the arguments, so a command typically takes a
+ * handful of bytes.
+ */
+public class ReplayLog {
+
+  private static final int MAGIC = 0x47433452;
+
+  /**
+   * Tells whether a command read from a file can be played back.
+   */
+  public interface CommandCheck {
+
+    boolean isValid(int command, int[] args, int count);
+  }
+
+  private final int version;
+  private final long seed;
+  private final int[] settings;
+  private long endTick;
+
+  private byte[] commands = new byte[1024];
+  private int length = 0;
+  private long lastTick = 0;
+
+  // Playback position
+  private int readPosition = 0;
+  private long readTick = 0;
+
+  /**
+   * @param version version of the game logic, a replay only plays back correctly on the same
+   * @param seed seed the game started with
+   * @param settings anything else the game started with, such as the difficulty
+   */
+  public ReplayLog(int version, long seed, int... settings) {
+    this.version = version;
+    this.seed = seed;
+    this.settings = settings.clone();
+  }
+
+  public int getVersion() {
+    return version;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public int getSetting(int index) {
+    return settings[index];
+  }
+
+  /**
+   * Number of the update the recording ended at.
+   */
+  public long getEndTick() {
+    return endTick;
+  }
+
+  public void setEndTick(long endTick) {
+    this.endTick = endTick;
+  }
+
+  /**
+   * Add a command given before the update with this number. Commands must be recorded in order.
+   */
+  public void record(long tick, int command, int... args) {
+    if (tick < lastTick) {
+      throw new IllegalArgumentException("Command at " + tick + " recorded after " + lastTick);
+    }
+    putVarLong(tick - lastTick);
+    putVarLong(command);
+    putVarLong(args.length);
+    for (int arg : args) {
+      // Zigzag, so small negative numbers stay small
+      putVarLong(((arg << 1) ^ (arg >> 31)) & 0xFFFFFFFFL);
+    }
+    lastTick = tick;
+    endTick = Math.max(endTick, tick);
+  }
+
+  /**
+   * Number of the update before which the next command is to be played back, or Long.MAX_VALUE if
+   * all commands have been played back.
+   */
+  public long nextTick() {
+    if (readPosition == length) {
+      return Long.MAX_VALUE;
+    }
+    int position = readPosition;
+    long tick = readTick + readVarLong();
+    readPosition = position;
+    return tick;
+  }
+
+  /**
+   * Play back the next command: store its arguments in args, and return the command.
+   */
+  public int next(int[] args) {
+    readTick += readVarLong();
+    int command = (int) readVarLong();
+    int count = (int) readVarLong();
+    for (int a = 0; a < count; a++) {
+      args[a] = readArg();
+    }
+    return command;
+  }
+
+  public void write(Path file) throws IOException {
+    ByteBuffer out = ByteBuffer.allocate(40 + settings.length * 4 + length);
+    out.putInt(MAGIC);
+    out.putInt(version);
+    out.putLong(seed);
+    out.putLong(endTick);
+    out.putInt(settings.length);
+    for (int setting : settings) {
+      out.putInt(setting);
+    }
+    out.putInt(length);
+    out.put(commands, 0, length);
+    Files.write(file, Arrays.copyOf(out.array(), out.position()));
+  }
+
+  /**
+   * Read a replay written by write(), checking all of its commands, so playing it back can not
+   * fail halfway.
+   *
+   * @param settingCount number of settings the replay must have
+   * @param maxArgs most arguments a command can have
+   * @param check which commands and arguments are valid
+   * @throws IOException if the file can not be read or is not a valid replay
+   */
+  public static ReplayLog read(Path file, int settingCount, int maxArgs, CommandCheck check)
+      throws IOException {
+    ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+    try {
+      if (in.getInt() != MAGIC) {
+        throw new IOException(file + " is not a replay");
+      }
+      int version = in.getInt();
+      long seed = in.getLong();
+      long endTick = in.getLong();
+      if (endTick < 0 || in.getInt() != settingCount) {
+        throw new IOException(file + " is not a valid replay");
+      }
+      int[] settings = new int[settingCount];
+      for (int s = 0; s < settings.length; s++) {
+        settings[s] = in.getInt();
+      }
+      ReplayLog log = new ReplayLog(version, seed, settings);
+      log.endTick = endTick;
+      log.length = in.getInt();
+      if (log.length < 0 || log.length > in.remaining()) {
+        throw new IOException(file + " is cut short");
+      }
+      log.commands = new byte[log.length];
+      in.get(log.commands);
+      log.lastTick = endTick;
+
+      int[] args = new int[maxArgs];
+      while (log.readPosition < log.length) {
+        log.readTick += log.readVarLong();
+        int command = (int) log.readVarLong();
+        long count = log.readVarLong();
+        if (count > maxArgs) {
+          throw new IOException(file + " has a command with " + count + " arguments");
+        }
+        for (int a = 0; a < count; a++) {
+          args[a] = log.readArg();
+        }
+        if (log.readTick < 0 || log.readTick > endTick
+            || !check.isValid(command, args, (int) count)) {
+          throw new IOException(file + " has an invalid command " + command + " at update "
+              + log.readTick);
+        }
+      }
+      log.readPosition = 0;
+      log.readTick = 0;
+      return log;
+    } catch (RuntimeException e) {
+      throw new IOException(file + " is not a valid replay", e);
+    }
+  }
+
+  private void putVarLong(long value) {
+    if (length + 10 > commands.length) {
+      commands = Arrays.copyOf(commands, Math.max(1024, commands.length * 2));
+    }
+    while ((value & ~0x7FL) != 0) {
+      commands[length++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    commands[length++] = (byte) value;
+  }
+
+  private int readArg() {
+    int zigzag = (int) readVarLong();
+    return (zigzag >>> 1) ^ -(zigzag & 1);
+  }
+
+  private long readVarLong() {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = commands[readPosition++];
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
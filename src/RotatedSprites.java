@@ -0,0 +1,70 @@
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Small sprites that are drawn at many different angles, such as ships. Each variant of the sprite
+ * is drawn once for each of a fixed number of angles, into images compatible with the display, so
+ * drawing a sprite is a single drawImage without any transform or paint changes. Images are
+ * painted the first time they are needed.
+ */
+public class RotatedSprites {
+
+  private static final double TWO_PI = Math.PI * 2;
+
+  public interface Painter {
+
+    /**
+     * Draw the variant of the sprite around (0, 0), pointing at angle 0.
+     */
+    void paint(Graphics2D g, int variant);
+  }
+
+  private final Painter painter;
+  private final int size;
+  private final int angles;
+  private final BufferedImage[][] images;
+
+  /**
+   * @param painter draws the sprites
+   * @param variants number of different sprites, for instance one for each color
+   * @param size width and height of the sprite images, with (0, 0) of the painter in the center
+   * @param angles number of angles to round to
+   */
+  public RotatedSprites(Painter painter, int variants, int size, int angles) {
+    this.painter = painter;
+    this.size = size;
+    this.angles = angles;
+    images = new BufferedImage[variants][angles];
+  }
+
+  /**
+   * Draw a variant of the sprite rotated by the angle (in radians) around (x, y).
+   */
+  public void draw(Graphics2D g, int variant, double angle, int x, int y) {
+    int step = Math.floorMod((int) Math.round(angle * angles / TWO_PI), angles);
+    BufferedImage image = images[variant][step];
+    if (image == null) {
+      image = g.getDeviceConfiguration().createCompatibleImage(size, size,
+          Transparency.TRANSLUCENT);
+      Graphics2D ig = image.createGraphics();
+      ig.setRenderingHints(g.getRenderingHints());
+      ig.translate(size / 2, size / 2);
+      ig.rotate(step * TWO_PI / angles);
+      painter.paint(ig, variant);
+      ig.dispose();
+      images[variant][step] = image;
+    }
+    g.drawImage(image, x - size / 2, y - size / 2, null);
+  }
+
+  /**
+   * Throw away all images, so they are painted again when drawn next.
+   */
+  public void invalidate() {
+    for (BufferedImage[] variant : images) {
+      Arrays.fill(variant, null);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free triple buffer for handing state from the thread running "update" to the thread running
+ * "render". The writer fills the back buffer and publishes it, the reader always gets the most
+ * recently published buffer. Neither side ever waits for the other.
+ *
+ * Buffers are reused, so the writer must overwrite all of the state every time.
+ */
+public class StateBuffer<T> {
+
+  private static final int INDEX_MASK = 3;
+  private static final int FRESH = 4;
+
+  private final T[] buffers;
+  // Index of the buffer in between writer and reader, plus a flag if it has not been read yet
+  private final AtomicInteger middle = new AtomicInteger(1);
+  private int back = 0;
+  private int front = 2;
+
+  @SuppressWarnings("unchecked")
+  public StateBuffer(Supplier<T> factory) {
+    buffers = (T[]) new Object[]{factory.get(), factory.get(), factory.get()};
+  }
+
+  /**
+   * The buffer to write the next state into. Only to be used by the writing thread.
+   */
+  public T back() {
+    return buffers[back];
+  }
+
+  /**
+   * Hand the back buffer over to the reader, and take a new back buffer.
+   */
+  public void publish() {
+    back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+  }
+
+  /**
+   * The most recently published state. Only to be used by the reading thread.
+   */
+  public T front() {
+    if ((middle.get() & FRESH) != 0) {
+      front = middle.getAndSet(front) & INDEX_MASK;
+    }
+    return buffers[front];
+  }
+}
@@ -0,0 +1,46 @@
+import java.util.Random;
+
+/**
+ * Random generator giving the same numbers as java.util.Random, whose internal state can be read
+ * and restored, for instance to save a game and continue it exactly as it would have gone.
+ * Unlike java.util.Random it is not thread safe.
+ */
+public class StatefulRandom extends Random {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final long MULTIPLIER = 0x5DEECE66DL;
+  private static final long ADDEND = 0xBL;
+  private static final long MASK = (1L << 48) - 1;
+
+  // Set by setSeed, which the constructor of Random calls
+  private long state;
+
+  public StatefulRandom() {
+    super();
+  }
+
+  public StatefulRandom(long seed) {
+    super(seed);
+  }
+
+  @Override
+  public synchronized void setSeed(long seed) {
+    super.setSeed(seed);
+    state = (seed ^ MULTIPLIER) & MASK;
+  }
+
+  @Override
+  protected int next(int bits) {
+    state = (state * MULTIPLIER + ADDEND) & MASK;
+    return (int) (state >>> (48 - bits));
+  }
+
+  public long getState() {
+    return state;
+  }
+
+  public void setState(long state) {
+    this.state = state & MASK;
+  }
+}
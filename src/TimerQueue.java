@@ -0,0 +1,135 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Queue of timers that fire at a given time, each identified by an int, such as the index of the
+ * object it is for. Scheduling and taking the next timer take O(log n). Timers that fire at the
+ * same time come out in order of id, so the order never depends on how they were scheduled.
+ */
+public class TimerQueue {
+
+  private int[] ids;
+  private double[] times;
+  private int size = 0;
+
+  public TimerQueue(int capacity) {
+    ids = new int[Math.max(1, capacity)];
+    times = new double[ids.length];
+  }
+
+  public void schedule(int id, double time) {
+    if (size == ids.length) {
+      ids = Arrays.copyOf(ids, size * 2);
+      times = Arrays.copyOf(times, size * 2);
+    }
+    // Sift up from the new leaf
+    int i = size++;
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (!before(id, time, ids[parent], times[parent])) {
+        break;
+      }
+      ids[i] = ids[parent];
+      times[i] = times[parent];
+      i = parent;
+    }
+    ids[i] = id;
+    times[i] = time;
+  }
+
+  /**
+   * Whether there is a timer that fires at or before this time.
+   */
+  public boolean due(double time) {
+    return size > 0 && times[0] <= time;
+  }
+
+  /**
+   * Time of the first timer to fire. The queue must not be empty.
+   */
+  public double nextTime() {
+    return times[0];
+  }
+
+  /**
+   * Remove the first timer to fire and return its id. The queue must not be empty.
+   */
+  public int poll() {
+    int first = ids[0];
+    size--;
+    int id = ids[size];
+    double time = times[size];
+    // Sift the last leaf down from the root
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && before(ids[child + 1], times[child + 1], ids[child], times[child])) {
+        child++;
+      }
+      if (!before(ids[child], times[child], id, time)) {
+        break;
+      }
+      ids[i] = ids[child];
+      times[i] = times[child];
+      i = child;
+    }
+    ids[i] = id;
+    times[i] = time;
+    return first;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Write all timers, for read().
+   */
+  public void write(ByteBuffer out) {
+    out.putInt(size);
+    for (int i = 0; i < size; i++) {
+      out.putInt(ids[i]);
+      out.putDouble(times[i]);
+    }
+  }
+
+  /**
+   * Replace all timers with the ones written by write(), for a queue that has one timer per object
+   * at most.
+   *
+   * @param idLimit the ids must be below this
+   * @throws IllegalArgumentException if the data can not have been written by write()
+   */
+  public void read(ByteBuffer in, int idLimit) {
+    clear();
+    int count = in.getInt();
+    // Each timer takes 12 bytes
+    if (count < 0 || count > in.remaining() / 12) {
+      throw new IllegalArgumentException("Can not read " + count + " timers");
+    }
+    boolean[] read = new boolean[idLimit];
+    for (int i = 0; i < count; i++) {
+      int id = in.getInt();
+      if (id < 0 || id >= idLimit || read[id]) {
+        throw new IllegalArgumentException("Timer id " + id + " out of range or used twice");
+      }
+      read[id] = true;
+      double time = in.getDouble();
+      if (!Double.isFinite(time)) {
+        throw new IllegalArgumentException("Timer time " + time + " not finite");
+      }
+      schedule(id, time);
+    }
+  }
+
+  private static boolean before(int id, double time, int otherId, double otherTime) {
+    return time < otherTime || (time == otherTime && id < otherId);
+  }
+}
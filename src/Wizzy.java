@@ -5,9 +5,9 @@ import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.Random;
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.Clip;
 
 /**
@@ -168,32 +168,33 @@ public class Wizzy extends AbstractGame {
 	private final Rectangle rect1 = new Rectangle();
 	private final Rectangle rect2 = new Rectangle();
 
+  // Copy of everything render() needs, so rendering can run on its own thread
+  private final StateBuffer<RenderState> renderStates = new StateBuffer<>(RenderState::new);
+
+  private static class RenderState {
+
+    private int state;
+    private int level;
+    private int mana;
+    private int walkAnimation;
+    private float spellJumpDuration;
+    private final int[][] map = new int[MAP_WIDTH][MAP_HEIGHT];
+    private final float[] entityX = new float[MAX_NUMBER_OF_ENTITIES];
+    private final float[] entityY = new float[MAX_NUMBER_OF_ENTITIES];
+    private final int[] entityType = new int[MAX_NUMBER_OF_ENTITIES];
+    private final float[] effectX = new float[MAX_NUMBER_OF_EFFECTS];
+    private final float[] effectY = new float[MAX_NUMBER_OF_EFFECTS];
+    private final float[] effectAngle = new float[MAX_NUMBER_OF_EFFECTS];
+    private final float[] effectProgress = new float[MAX_NUMBER_OF_EFFECTS];
+  }
+
   public Wizzy() {
     super("Wizzy's Escape", 512, 532, false);
   }
 
   @Override
   protected void setup() throws Exception {
-    // Convert string to sprite sheet
-    spriteSheet = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
-    int inputPos = 0;
-    for (int y = 0; y < IMAGE_HEIGHT; y++) {
-      for (int x = 0; x < IMAGE_WIDTH; x++) {
-        int stringPos = inputPos / PIXELS_PER_VALUE;
-        int partPos = inputPos % PIXELS_PER_VALUE;
-        int paletteIndex =
-            (spriteSheetString.charAt(stringPos) >>> (partPos * BITS_PER_PIXEL)) & 0x0F;
-        int val =
-            0xff000000 | (palette[paletteIndex][RED] << 16) | (palette[paletteIndex][GREEN] << 8)
-                | palette[paletteIndex][BLUE];
-        // Transparency
-				if (paletteIndex == 0) {
-					val = 0;
-				}
-        spriteSheet.setRGB(x, y, val);
-        inputPos++;
-      }
-    }
+    spriteSheet = decodeSpriteSheet();
 
     // Setup audio
     // Buffer for the audio sample
@@ -213,14 +214,55 @@ public class Wizzy extends AbstractGame {
     }
     AudioFormat audioFormat = new AudioFormat(16000, 8, 1, true, true);
     AudioFormat audioFormatSlow = new AudioFormat(8000, 8, 1, true, true);
-    spellSound = AudioSystem.getClip();
-    jumpSound = AudioSystem.getClip();
-    stepSound = AudioSystem.getClip();
-    spellSound.open(audioFormat, jumpSoundData, 0, jumpSoundData.length);
-    stepSound.open(audioFormat, stepSoundData, 0, stepSoundData.length);
-    jumpSound.open(audioFormatSlow, stepSoundData, 0, stepSoundData.length);
+    spellSound = openClip(audioFormat, jumpSoundData);
+    stepSound = openClip(audioFormat, stepSoundData);
+    jumpSound = openClip(audioFormatSlow, stepSoundData);
+
+
+  }
+
+  /**
+   * Convert string to sprite sheet
+   */
+  BufferedImage decodeSpriteSheet() {
+    BufferedImage image = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT,
+        BufferedImage.TYPE_INT_ARGB);
+    int inputPos = 0;
+    for (int y = 0; y < IMAGE_HEIGHT; y++) {
+      for (int x = 0; x < IMAGE_WIDTH; x++) {
+        int stringPos = inputPos / PIXELS_PER_VALUE;
+        int partPos = inputPos % PIXELS_PER_VALUE;
+        int paletteIndex =
+            (spriteSheetString.charAt(stringPos) >>> (partPos * BITS_PER_PIXEL)) & 0x0F;
+        int val =
+            0xff000000 | (palette[paletteIndex][RED] << 16) | (palette[paletteIndex][GREEN] << 8)
+                | palette[paletteIndex][BLUE];
+        // Transparency
+				if (paletteIndex == 0) {
+					val = 0;
+				}
+        image.setRGB(x, y, val);
+        inputPos++;
+      }
+    }
+    return image;
+  }
 
+  /**
+   * Start playing the given level. It is set up on the next update.
+   */
+  void startLevel(int startLevel) {
+    level = startLevel;
+    state = STATE_NEWLEVEL;
+  }
 
+  /**
+   * A hash of the entities and the map, to tell whether two runs played out the same.
+   */
+  int checksum() {
+    int hash = 31 * Arrays.hashCode(entityX) + Arrays.hashCode(entityY);
+    hash = 31 * hash + Arrays.hashCode(entityType);
+    return 31 * hash + Arrays.deepHashCode(map);
   }
 
   @Override
@@ -345,8 +387,7 @@ public class Wizzy extends AbstractGame {
             if (walkAnimationDelay <= 0) {
 
               // Play the sound
-              stepSound.setFramePosition(0); // rewind to the beginning
-              stepSound.start();
+              play(stepSound);
 
               if (animationDirection == -1) {
 								if (walkAnimation == 0) {
@@ -385,8 +426,7 @@ public class Wizzy extends AbstractGame {
           if (keyDown[KeyEvent.VK_UP]) {
             // W key (jump)
             if (jumpCooldown <= 0) {
-              jumpSound.setFramePosition(0); // rewind to the beginning
-              jumpSound.start();
+              play(jumpSound);
 							if (spellJumpDuration > 0f) {
 								entityVY[ENTITY_NUMBER_PLAYER] = MOVEMENT_Y_FORCE;
 							} else {
@@ -399,8 +439,7 @@ public class Wizzy extends AbstractGame {
 
         if ((keyDown[KeyEvent.VK_Z] || keyDown[KeyEvent.VK_X]) && mana >= 1) {
           // A spell was cast
-          spellSound.setFramePosition(0); // rewind to the beginning
-          spellSound.start();
+          play(spellSound);
           if (keyDown[KeyEvent.VK_Z]) {
             keyDown[KeyEvent.VK_Z] = false;
             spellJumpDuration = SPELL_GRAV_SELF_DURATION;
@@ -557,8 +596,7 @@ public class Wizzy extends AbstractGame {
                       || entityType[oe] == ID_MONSTER) {
                     // Die!
                     playerDead = true;
-                    jumpSound.setFramePosition(0); // rewind to the beginning
-                    jumpSound.start();
+                    play(jumpSound);
                     entityVY[ENTITY_NUMBER_PLAYER] = -200;
                   } else if (entityType[oe] == ID_DOOR) {
                     // Reached a door, level complete!
@@ -598,12 +636,40 @@ public class Wizzy extends AbstractGame {
   }
 
   @Override
-  protected void render(Graphics2D g, float frameTimeS, float gameTimeS) {
+  protected boolean supportsThreadedRendering() {
+    return true;
+  }
+
+  @Override
+  protected void publishRenderState() {
+    RenderState rs = renderStates.back();
+    rs.state = state;
+    rs.level = level;
+    rs.mana = mana;
+    rs.walkAnimation = walkAnimation;
+    rs.spellJumpDuration = spellJumpDuration;
+    for (int x = 0; x < MAP_WIDTH; x++) {
+      System.arraycopy(map[x], 0, rs.map[x], 0, MAP_HEIGHT);
+    }
+    System.arraycopy(entityX, 0, rs.entityX, 0, MAX_NUMBER_OF_ENTITIES);
+    System.arraycopy(entityY, 0, rs.entityY, 0, MAX_NUMBER_OF_ENTITIES);
+    System.arraycopy(entityType, 0, rs.entityType, 0, MAX_NUMBER_OF_ENTITIES);
+    System.arraycopy(effectX, 0, rs.effectX, 0, MAX_NUMBER_OF_EFFECTS);
+    System.arraycopy(effectY, 0, rs.effectY, 0, MAX_NUMBER_OF_EFFECTS);
+    System.arraycopy(effectAngle, 0, rs.effectAngle, 0, MAX_NUMBER_OF_EFFECTS);
+    System.arraycopy(effectProgress, 0, rs.effectProgress, 0, MAX_NUMBER_OF_EFFECTS);
+    renderStates.publish();
+  }
+
+  @Override
+  protected void render(Graphics2D g, float frameTimeS, float gameTimeS, float interpolation) {
+    RenderState rs = renderStates.front();
+
     // Clear background
     g.drawImage(spriteSheet, -20, -10, 532, 532, 0, 240, 16, 256, null);
     g.setColor(new Color(1f, 1f, 1f));
 
-    if (state == STATE_WELCOME) {
+    if (rs.state == STATE_WELCOME) {
 
       g.setFont(bigFont);
       g.drawString("Wizzy4K", 140, 100);
@@ -611,64 +677,68 @@ public class Wizzy extends AbstractGame {
 
       g.drawImage(spriteSheet, 100, 100, 412, 412, 0, 80, 16, 96, null);
 
-    } else if (state == STATE_GAME) {
+    } else if (rs.state == STATE_GAME) {
 
-      g.drawString("Room " + (level + 1), 10, 526);
+      g.setFont(smallFont);
+      g.drawString("Room " + (rs.level + 1), 10, 526);
 
       // Draw blocks
       for (int x = 0; x < MAP_WIDTH; x++) {
         for (int y = 0; y < MAP_HEIGHT; y++) {
-					if (map[x][y] != 0) {
+					if (rs.map[x][y] != 0) {
 						g.drawImage(spriteSheet, x * TILE_SIZE, y * TILE_SIZE, x * TILE_SIZE + TILE_SIZE,
-								TILE_SIZE * y + TILE_SIZE, 0, 16 * map[x][y], 16, 16 * (map[x][y] + 1), null);
+								TILE_SIZE * y + TILE_SIZE, 0, 16 * rs.map[x][y], 16, 16 * (rs.map[x][y] + 1),
+								null);
 					}
         }
       }
 
       // Draw entities (but not player)
       for (int e = 1; e < MAX_NUMBER_OF_ENTITIES; e++) {
-        if (entityType[e] != ID_NONE) {
-          int sheetIndex = entityType[e];
-          g.drawImage(spriteSheet, (int) entityX[e] - 16, (int) entityY[e] - 16,
-              (int) entityX[e] + 16, (int) entityY[e] + 16, 0, 16 * sheetIndex, 16,
+        if (rs.entityType[e] != ID_NONE) {
+          int sheetIndex = rs.entityType[e];
+          g.drawImage(spriteSheet, (int) rs.entityX[e] - 16, (int) rs.entityY[e] - 16,
+              (int) rs.entityX[e] + 16, (int) rs.entityY[e] + 16, 0, 16 * sheetIndex, 16,
               16 * (sheetIndex + 1), null);
         }
       }
 
       // Draw mana
-      for (int m = 0; m < mana; m++) {
+      for (int m = 0; m < rs.mana; m++) {
         g.drawImage(spriteSheet, 490 - 12 * m, 515, 506 - 12 * m, 531, 0, 112, 16, 128, null);
       }
 
       // Draw player sprite
       int yD1 = -16, yD2 = 16;
-      if (spellJumpDuration > 0) {
+      if (rs.spellJumpDuration > 0) {
         yD1 = 16;
         yD2 = -16;
       }
-      g.drawImage(spriteSheet, (int) entityX[ENTITY_NUMBER_PLAYER] - 16,
-          (int) entityY[ENTITY_NUMBER_PLAYER] + yD1, (int) entityX[ENTITY_NUMBER_PLAYER] + 16,
-          (int) entityY[ENTITY_NUMBER_PLAYER] + yD2, 0, 16 * walkAnimation, 16,
-          16 * (walkAnimation + 1), null);
+      g.drawImage(spriteSheet, (int) rs.entityX[ENTITY_NUMBER_PLAYER] - 16,
+          (int) rs.entityY[ENTITY_NUMBER_PLAYER] + yD1,
+          (int) rs.entityX[ENTITY_NUMBER_PLAYER] + 16,
+          (int) rs.entityY[ENTITY_NUMBER_PLAYER] + yD2, 0, 16 * rs.walkAnimation, 16,
+          16 * (rs.walkAnimation + 1), null);
 
       // Draw effects
       for (int e = 0; e < MAX_NUMBER_OF_EFFECTS; e++) {
-        if (effectProgress[e] < 1f) {
-          int halfSize = (int) (16f * (1f - effectProgress[e]));
-          int x = (int) (effectX[e] + Math.cos(effectAngle[e]) * EFFECT_RANGE * effectProgress[e]);
-          int y = (int) (effectY[e] + Math.sin(effectAngle[e]) * EFFECT_RANGE * effectProgress[e]);
+        if (rs.effectProgress[e] < 1f) {
+          int halfSize = (int) (16f * (1f - rs.effectProgress[e]));
+          float range = EFFECT_RANGE * rs.effectProgress[e];
+          int x = (int) (rs.effectX[e] + Math.cos(rs.effectAngle[e]) * range);
+          int y = (int) (rs.effectY[e] + Math.sin(rs.effectAngle[e]) * range);
           g.drawImage(spriteSheet, x - halfSize, y - halfSize, x + halfSize, y + halfSize, 0, 112,
               16, 128, null);
         }
       }
 
-    } else if (state == STATE_LEVELCOMPLETE) {
+    } else if (rs.state == STATE_LEVELCOMPLETE) {
 
       g.setFont(bigFont);
       g.drawString("Room done!", 75, 250);
       g.setFont(smallFont);
 
-    } else if (state == STATE_GAMEWON) {
+    } else if (rs.state == STATE_GAMEWON) {
 
       g.setFont(bigFont);
       g.drawString("Escape!", 135, 250);
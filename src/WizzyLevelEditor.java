@@ -180,7 +180,7 @@ public class WizzyLevelEditor extends AbstractGame {
   }
 
   @Override
-  protected void render(Graphics2D g, float frameTimeS, float gameTimeS) {
+  protected void render(Graphics2D g, float frameTimeS, float gameTimeS, float interpolation) {
     // Clear background
     g.setPaint(backPaint);
     g.fillRect(0, 0, getWidth(), getHeight());